@@ -0,0 +1,74 @@
+package com.opencore.auth.bench;
+
+import com.opencore.auth.api.dto.OtpRequestRequest;
+import com.opencore.auth.api.dto.OtpVerifyRequest;
+import com.opencore.auth.api.dto.OtpVerifyResponse;
+import com.opencore.auth.api.dto.TokenRefreshRequest;
+import com.opencore.auth.api.dto.TokenRefreshResponse;
+import com.opencore.auth.core.AuthService;
+import com.opencore.auth.core.OpenCoreJwtProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthFlowBenchmark {
+    @State(Scope.Benchmark)
+    public static class Service {
+        @Param({"JWT", "OPAQUE"})
+        OpenCoreJwtProperties.RefreshTokenFormat refreshTokenFormat;
+
+        AuthService auth;
+
+        @Setup
+        public void setup() {
+            auth = Fixtures.authService(refreshTokenFormat);
+        }
+
+        @TearDown
+        public void tearDown() {
+            auth.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private static final AtomicInteger IDS = new AtomicInteger();
+
+        String email;
+        String ip;
+        String refreshToken;
+
+        @Setup
+        public void setup(Service service) {
+            int id = IDS.incrementAndGet();
+            email = "bench-" + id + "@example.com";
+            ip = "10.0." + (id >> 8) + "." + (id & 0xFF);
+            refreshToken = login(service.auth, this).refreshToken();
+        }
+    }
+
+    // verifyOtp needs a fresh code each time, so this measures the request + verify pair a login costs.
+    @Benchmark
+    public OtpVerifyResponse requestAndVerifyOtp(Service service, Client client) {
+        return login(service.auth, client);
+    }
+
+    // Each call rotates the client's refresh token, like a real client would.
+    @Benchmark
+    public TokenRefreshResponse refresh(Service service, Client client) {
+        TokenRefreshResponse r = service.auth.refresh(new TokenRefreshRequest(client.refreshToken), client.ip);
+        client.refreshToken = r.refreshToken();
+        return r;
+    }
+
+    private static OtpVerifyResponse login(AuthService auth, Client client) {
+        var issued = auth.requestOtp(new OtpRequestRequest(client.email, "ios"), client.ip);
+        return auth.verifyOtp(new OtpVerifyRequest(client.email, issued.devOtp(), issued.requestId(), "ios"), client.ip);
+    }
+}
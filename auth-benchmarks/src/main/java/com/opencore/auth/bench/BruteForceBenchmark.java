@@ -0,0 +1,68 @@
+package com.opencore.auth.bench;
+
+import com.opencore.auth.core.BruteForceProtector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BruteForceBenchmark {
+    private static final int KEYS = 10_000;
+
+    private BruteForceProtector protector;
+    private String[] emails;
+    private String[] ips;
+
+    @Setup
+    public void setup() {
+        protector = new BruteForceProtector(Fixtures.bruteForceProperties(), 42);
+        emails = new String[KEYS];
+        ips = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            emails[i] = "user-" + i + "@example.com";
+            ips[i] = "10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF);
+            // Leave part of the keyspace blocked so reads hit both outcomes.
+            int failures = i % 4 == 0 ? 5 : i % 3;
+            for (int f = 0; f < failures; f++) {
+                protector.onFailure(emails[i], ips[i]);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        protector.close();
+    }
+
+    @Benchmark
+    public boolean isBlocked() {
+        int i = ThreadLocalRandom.current().nextInt(KEYS);
+        return protector.isBlocked(emails[i], ips[i]);
+    }
+
+    @Benchmark
+    public void onFailure() {
+        int i = ThreadLocalRandom.current().nextInt(KEYS);
+        protector.onFailure(emails[i], ips[i]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public boolean mixedIsBlocked() {
+        return isBlocked();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedOnFailure() {
+        onFailure();
+    }
+}
@@ -0,0 +1,50 @@
+package com.opencore.auth.bench;
+
+import com.opencore.auth.core.AuthService;
+import com.opencore.auth.core.OpenCoreBruteForceProperties;
+import com.opencore.auth.core.OpenCoreJwtProperties;
+import com.opencore.auth.core.OpenCoreOtpRateLimitProperties;
+import com.opencore.auth.core.OpenCoreStateProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Mirrors auth-service's application.yml defaults.
+final class Fixtures {
+    private Fixtures() {}
+
+    static OpenCoreJwtProperties jwtProperties() {
+        return jwtProperties(OpenCoreJwtProperties.RefreshTokenFormat.JWT);
+    }
+
+    static OpenCoreJwtProperties jwtProperties(OpenCoreJwtProperties.RefreshTokenFormat refreshTokenFormat) {
+        return new OpenCoreJwtProperties(
+                "opencore",
+                "dev-only-change-me-dev-only-change-me-dev-only-change-me",
+                900,
+                2592000,
+                refreshTokenFormat
+        );
+    }
+
+    static OpenCoreBruteForceProperties bruteForceProperties() {
+        return new OpenCoreBruteForceProperties(900, 5, 20, 100, 262144, 30);
+    }
+
+    static OpenCoreOtpRateLimitProperties otpRateLimitProperties() {
+        return new OpenCoreOtpRateLimitProperties(5, 2, 100, 60, 262144);
+    }
+
+    static AuthService authService() {
+        return authService(OpenCoreJwtProperties.RefreshTokenFormat.JWT);
+    }
+
+    static AuthService authService(OpenCoreJwtProperties.RefreshTokenFormat refreshTokenFormat) {
+        return new AuthService(
+                jwtProperties(refreshTokenFormat),
+                new OpenCoreStateProperties(false, null, 0, 0, 0),
+                bruteForceProperties(),
+                // The flow benchmarks log the same users in over and over; don't let issuance limits get in the way.
+                new OpenCoreOtpRateLimitProperties(4000, 1e9, 4000, 1e9, 262144),
+                new SimpleMeterRegistry()
+        );
+    }
+}
@@ -0,0 +1,38 @@
+package com.opencore.auth.bench;
+
+import com.opencore.auth.core.JwtService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+    private JwtService jwt;
+    private String refreshToken;
+
+    @Setup
+    public void setup() {
+        jwt = new JwtService(Fixtures.jwtProperties());
+        refreshToken = jwt.issueRefreshToken("5d60d4e2-8066-3f25-8d54-52f92c910092", "ios").token();
+    }
+
+    @Benchmark
+    public String issueAccessToken() {
+        return jwt.issueAccessToken("5d60d4e2-8066-3f25-8d54-52f92c910092", "User");
+    }
+
+    @Benchmark
+    public JwtService.IssuedRefreshToken issueRefreshToken() {
+        return jwt.issueRefreshToken("5d60d4e2-8066-3f25-8d54-52f92c910092", "ios");
+    }
+
+    @Benchmark
+    public JwtService.ParsedToken parseAndVerify() {
+        return jwt.parseAndVerify(refreshToken);
+    }
+}
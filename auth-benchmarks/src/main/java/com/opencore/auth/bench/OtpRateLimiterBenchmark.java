@@ -0,0 +1,56 @@
+package com.opencore.auth.bench;
+
+import com.opencore.auth.core.OpenCoreOtpRateLimitProperties;
+import com.opencore.auth.core.OtpRateLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+public class OtpRateLimiterBenchmark {
+    private static final int KEYS = 100_000;
+
+    private OtpRateLimiter limiter;
+    private OtpRateLimiter unlimited;
+    private String[] emails;
+    private String[] ips;
+
+    @Setup
+    public void setup() {
+        limiter = new OtpRateLimiter(Fixtures.otpRateLimitProperties(), 42);
+        // Refills faster than any thread can drain it, so every call takes the CAS path instead of being refused.
+        unlimited = new OtpRateLimiter(new OpenCoreOtpRateLimitProperties(4000, 1e12, 4000, 1e12, 262144), 42);
+        emails = new String[KEYS];
+        ips = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            emails[i] = "user-" + i + "@example.com";
+            ips[i] = "10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF);
+        }
+    }
+
+    // Many clients, mostly refused once their small buckets drain: the steady state under an issuance flood.
+    @Benchmark
+    public long tryAcquireSpread() {
+        int i = ThreadLocalRandom.current().nextInt(KEYS);
+        return limiter.tryAcquire(emails[i], ips[i]);
+    }
+
+    // Every thread CASes the same two buckets.
+    @Benchmark
+    public long tryAcquireHotKey() {
+        return unlimited.tryAcquire(emails[0], ips[0]);
+    }
+
+    @Benchmark
+    public long tryAcquireGranted() {
+        int i = ThreadLocalRandom.current().nextInt(KEYS);
+        return unlimited.tryAcquire(emails[i], ips[i]);
+    }
+}
@@ -0,0 +1,55 @@
+package com.opencore.auth.bench;
+
+import com.opencore.auth.core.RevocationFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RevocationFilterBenchmark {
+    @Param({"1000000"})
+    public int revoked;
+
+    private RevocationFilter filter;
+    private long[] revokedHi;
+    private long[] revokedLo;
+
+    @Setup
+    public void setup() {
+        filter = new RevocationFilter();
+        revokedHi = new long[revoked];
+        revokedLo = new long[revoked];
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        for (int i = 0; i < revoked; i++) {
+            UUID jti = UUID.randomUUID();
+            revokedHi[i] = jti.getMostSignificantBits();
+            revokedLo[i] = jti.getLeastSignificantBits();
+            filter.apply(revokedHi[i], revokedLo[i], exp);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        filter.close();
+    }
+
+    @Benchmark
+    public boolean hit() {
+        int i = ThreadLocalRandom.current().nextInt(revoked);
+        return filter.isRevoked(revokedHi[i], revokedLo[i]);
+    }
+
+    // The common case: a token that was never revoked.
+    @Benchmark
+    public boolean miss() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return filter.isRevoked(random.nextLong(), random.nextLong());
+    }
+}
@@ -0,0 +1,49 @@
+package com.opencore.auth.bench;
+
+import com.opencore.auth.core.InMemorySessionStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SessionStoreBenchmark {
+    @Param({"1000000"})
+    public int sessions;
+
+    private InMemorySessionStore store;
+    private String[] jtis;
+    private InMemorySessionStore.Session session;
+
+    @Setup
+    public void setup() {
+        store = new InMemorySessionStore(2592000);
+        session = new InMemorySessionStore.Session(
+                UUID.randomUUID().toString(), "ios", System.currentTimeMillis() / 1000 + 2592000);
+        jtis = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            jtis[i] = UUID.randomUUID().toString();
+            store.put(jtis[i], session);
+        }
+    }
+
+    @Benchmark
+    public InMemorySessionStore.Session get() {
+        return store.get(jtis[ThreadLocalRandom.current().nextInt(sessions)]);
+    }
+
+    // Revoke and re-put an existing session, keeping the store at its configured size.
+    @Benchmark
+    public boolean revokeAndPut() {
+        String jti = jtis[ThreadLocalRandom.current().nextInt(sessions)];
+        boolean revoked = store.revoke(jti);
+        store.put(jti, session);
+        return revoked;
+    }
+}
@@ -0,0 +1,128 @@
+package com.opencore.auth.bench;
+
+import com.opencore.auth.core.InMemorySessionStore;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Heap and GC pauses of InMemorySessionStore at a given size, which JMH doesn't report.
+ *
+ * Fills the store, measures retained heap after a full GC, then runs a login-like mix against it (mostly refresh
+ * rotations, some device listings and revoke-alls) and reports the GC pauses seen meanwhile. Run it with the heap and
+ * collector you deploy, e.g.
+ *
+ *   java -XX:+UseG1GC -XX:G1HeapRegionSize=32m -Xmx3584m -Xlog:gc -cp target/benchmarks.jar \
+ *       com.opencore.auth.bench.SessionStoreFootprint 20000000 4 60
+ *
+ * Arguments: sessions, sessions per user, seconds of churn.
+ *
+ * At tens of millions of sessions each segment's arrays are a few MB. With G1's default region size for such heaps
+ * they are humongous objects that round up to whole regions and waste about a third of the heap, so give G1 regions
+ * large enough to hold them as ordinary objects.
+ */
+public final class SessionStoreFootprint {
+    private static final long TTL_SECONDS = 2592000;
+    private static final String[] DEVICES = {"ios", "android", "web", "desktop"};
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        int perUser = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int churnSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int users = (sessions + perUser - 1) / perUser;
+        // Generation of each slot's current jti; the jti itself is derived, so the harness holds no strings.
+        int[] generation = new int[sessions];
+
+        long baseline = retainedHeap();
+        InMemorySessionStore store = new InMemorySessionStore(TTL_SECONDS);
+        long exp = nowSeconds() + TTL_SECONDS;
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            store.put(jti(i, 0).toString(), new InMemorySessionStore.Session(user(i / perUser), DEVICES[i % perUser % DEVICES.length], exp));
+        }
+        long fillMillis = (System.nanoTime() - start) / 1_000_000;
+        long retained = retainedHeap() - baseline;
+        System.out.printf("filled %,d sessions for %,d users in %,d ms%n", store.size(), users, fillMillis);
+        System.out.printf("retained heap %,d MB, %.1f bytes/session%n", retained >> 20, (double) retained / sessions);
+
+        List<Long> pauses = Collections.synchronizedList(new ArrayList<>());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((n, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+                var info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+                pauses.add(info.getGcInfo().getDuration());
+            }, null, null);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long rotations = 0, listings = 0, revokeAlls = 0;
+        long end = System.nanoTime() + churnSeconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            for (int k = 0; k < 1000; k++) {
+                int op = random.nextInt(100);
+                int i = random.nextInt(sessions);
+                if (op < 94) {
+                    store.rotate(jti(i, generation[i]), jti(i, generation[i] + 1), nowSeconds() + TTL_SECONDS);
+                    generation[i]++;
+                    rotations++;
+                } else if (op < 99) {
+                    store.listForUser(user(i / perUser));
+                    listings++;
+                } else {
+                    int u = i / perUser;
+                    store.revokeAllForUser(user(u));
+                    // Sign the user back in on every device, so the store stays at its size.
+                    for (int s = u * perUser; s < Math.min(sessions, (u + 1) * perUser); s++) {
+                        generation[s]++;
+                        store.put(jti(s, generation[s]).toString(),
+                                new InMemorySessionStore.Session(user(u), DEVICES[s % perUser % DEVICES.length], nowSeconds() + TTL_SECONDS));
+                    }
+                    revokeAlls++;
+                }
+            }
+        }
+        System.out.printf("churn %ds: %,d rotations, %,d listings, %,d revoke-alls, %,d ops/s, size %,d%n", churnSeconds,
+                rotations, listings, revokeAlls, (rotations + listings + revokeAlls) / churnSeconds, store.size());
+
+        List<Long> sorted;
+        synchronized (pauses) {
+            sorted = new ArrayList<>(pauses);
+        }
+        Collections.sort(sorted);
+        long total = sorted.stream().mapToLong(Long::longValue).sum();
+        System.out.printf("gc during churn: %d collections, %d ms total, p50 %d ms, p99 %d ms, max %d ms%n",
+                sorted.size(), total, percentile(sorted, 50), percentile(sorted, 99), percentile(sorted, 100));
+    }
+
+    private static UUID jti(int slot, int generation) {
+        return new UUID(0x5e55_1000_0000_0000L | generation, slot);
+    }
+
+    private static String user(int user) {
+        return new UUID(0x0a11_0000_0000_0000L, user).toString();
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static long retainedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long percentile(List<Long> sorted, int p) {
+        if (sorted.isEmpty()) return 0;
+        return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(p / 100.0 * sorted.size()) - 1));
+    }
+}
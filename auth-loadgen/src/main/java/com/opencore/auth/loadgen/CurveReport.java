@@ -0,0 +1,72 @@
+package com.opencore.auth.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Prints each load point as it finishes and writes curve.csv plus one HdrHistogram .hgrm file per endpoint and load. */
+final class CurveReport {
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final LoadOptions options;
+    private final List<Point> points = new ArrayList<>();
+
+    CurveReport(LoadOptions options) {
+        this.options = options;
+    }
+
+    void add(Point point) {
+        points.add(point);
+        long total = 0;
+        for (EndpointStats.Interval i : point.intervals().values()) {
+            total += i.latencyMicros().getTotalCount();
+        }
+        System.out.printf("load %d: %.0f req/s over %.1fs%s%n",
+                point.load(), total / point.seconds(), point.seconds(), point.saturated() ? " (SATURATED)" : "");
+        System.out.printf("  %-15s %10s %8s %8s %9s %9s %9s %9s %9s%n",
+                "endpoint", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "p99.99 ms", "max ms");
+        point.intervals().forEach((endpoint, i) -> {
+            Histogram h = i.latencyMicros();
+            System.out.printf("  %-15s %10.0f %8d %8.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    endpoint.label, h.getTotalCount() / point.seconds(), i.errors(),
+                    millis(h, 50), millis(h, 90), millis(h, 99), millis(h, 99.9), millis(h, 99.99),
+                    h.getMaxValue() / MICROS_PER_MILLI);
+        });
+    }
+
+    void write() throws IOException {
+        Path dir = options.out();
+        Files.createDirectories(dir);
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(dir.resolve("curve.csv")))) {
+            csv.println("model,load,endpoint,throughput_rps,requests,errors,p50_ms,p90_ms,p99_ms,p999_ms,p9999_ms,max_ms,saturated");
+            for (Point p : points) {
+                for (Map.Entry<Endpoint, EndpointStats.Interval> e : p.intervals().entrySet()) {
+                    Histogram h = e.getValue().latencyMicros();
+                    csv.printf("%s,%d,%s,%.1f,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%s%n",
+                            options.model().name().toLowerCase(), p.load(), e.getKey().label,
+                            h.getTotalCount() / p.seconds(), h.getTotalCount(), e.getValue().errors(),
+                            millis(h, 50), millis(h, 90), millis(h, 99), millis(h, 99.9), millis(h, 99.99),
+                            h.getMaxValue() / MICROS_PER_MILLI, p.saturated());
+                    try (PrintStream hgrm = new PrintStream(Files.newOutputStream(
+                            dir.resolve(e.getKey().label + "-" + p.load() + ".hgrm")))) {
+                        h.outputPercentileDistribution(hgrm, MICROS_PER_MILLI);
+                    }
+                }
+            }
+        }
+        System.out.println("report written to " + dir.toAbsolutePath());
+    }
+
+    private static double millis(Histogram h, double percentile) {
+        return h.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+    }
+
+    record Point(int load, boolean saturated, double seconds, Map<Endpoint, EndpointStats.Interval> intervals) {}
+}
@@ -0,0 +1,16 @@
+package com.opencore.auth.loadgen;
+
+enum Endpoint {
+    OTP_REQUEST("otp_request", "/v1/auth/login/email-otp/request"),
+    OTP_VERIFY("otp_verify", "/v1/auth/login/email-otp/verify"),
+    TOKEN_REFRESH("token_refresh", "/v1/auth/token/refresh"),
+    SESSION_REVOKE("session_revoke", "/v1/auth/sessions/revoke");
+
+    final String label;
+    final String path;
+
+    Endpoint(String label, String path) {
+        this.label = label;
+        this.path = path;
+    }
+}
@@ -0,0 +1,27 @@
+package com.opencore.auth.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Latencies (microseconds) and failures for one endpoint; {@link #interval()} resets both. */
+final class EndpointStats {
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(2);
+
+    private final Recorder latency = new Recorder(MAX_MICROS, 3);
+    private final LongAdder errors = new LongAdder();
+
+    void record(long startNanos, long endNanos, boolean ok) {
+        latency.recordValue(Math.min(MAX_MICROS, Math.max(0, (endNanos - startNanos) / 1000)));
+        if (!ok) errors.increment();
+    }
+
+    Interval interval() {
+        Histogram h = latency.getIntervalHistogram();
+        return new Interval(h, errors.sumThenReset());
+    }
+
+    record Interval(Histogram latencyMicros, long errors) {}
+}
@@ -0,0 +1,142 @@
+package com.opencore.auth.loadgen;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the auth-service login flow at increasing loads and reports per-endpoint latency percentiles at each one,
+ * giving a throughput-vs-latency curve. See docs/load-testing.md.
+ */
+public final class LoadGenerator {
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final LoadOptions options;
+    private final ExecutorService io;
+    private final Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+    private final LoginFlow flow;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private LoadGenerator(LoadOptions options) {
+        this.options = options;
+        AtomicInteger threads = new AtomicInteger();
+        this.io = Executors.newFixedThreadPool(options.ioThreads(), r -> {
+            Thread t = new Thread(r, "loadgen-io-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(io)
+                .build();
+        for (Endpoint e : Endpoint.values()) {
+            stats.put(e, new EndpointStats());
+        }
+        this.flow = new LoginFlow(http, options, stats);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        LoadGenerator generator = new LoadGenerator(options);
+        CurveReport report = new CurveReport(options);
+        for (int load : options.loads()) {
+            CurveReport.Point point = generator.runPoint(load);
+            report.add(point);
+            if (point.saturated()) {
+                System.out.println("stopping: service saturated at " + load);
+                break;
+            }
+        }
+        report.write();
+    }
+
+    private CurveReport.Point runPoint(int load) throws InterruptedException {
+        System.out.printf("== %s load %d: %ds warmup, %ds measured%n",
+                options.model().name().toLowerCase(), load, options.warmupSeconds(), options.durationSeconds());
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+
+        boolean saturated = options.model() == LoadOptions.Model.OPEN
+                ? driveOpen(load, start, warmupEnd, end)
+                : driveClosed(load, warmupEnd, end);
+
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        long measuredNanos = System.nanoTime() - warmupEnd;
+
+        Map<Endpoint, EndpointStats.Interval> intervals = new EnumMap<>(Endpoint.class);
+        stats.forEach((e, s) -> intervals.put(e, s.interval()));
+        return new CurveReport.Point(load, saturated, measuredNanos / 1e9, intervals);
+    }
+
+    // Logins are scheduled on a fixed timetable; if the service (or this process) falls behind, overdue logins are
+    // fired immediately and their latency still counts from the scheduled time.
+    private boolean driveOpen(int loginsPerSecond, long start, long warmupEnd, long end) {
+        double periodNanos = 1e9 / loginsPerSecond;
+        boolean measuring = false;
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * periodNanos);
+            if (intended >= end) return false;
+            if (!measuring && intended >= warmupEnd) {
+                discardStats();
+                measuring = true;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            if (inFlight.get() >= options.maxInFlight()) return true;
+            inFlight.incrementAndGet();
+            flow.run(intended).whenComplete((r, e) -> inFlight.decrementAndGet());
+        }
+    }
+
+    private boolean driveClosed(int users, long warmupEnd, long end) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch stopped = new CountDownLatch(users);
+        for (int u = 0; u < users; u++) {
+            loop(running, stopped);
+        }
+        LockSupport.parkNanos(warmupEnd - System.nanoTime());
+        discardStats();
+        LockSupport.parkNanos(end - System.nanoTime());
+        running.set(false);
+        stopped.await(DRAIN_TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+        return false;
+    }
+
+    private void loop(AtomicBoolean running, CountDownLatch stopped) {
+        if (!running.get()) {
+            stopped.countDown();
+            return;
+        }
+        inFlight.incrementAndGet();
+        flow.run(System.nanoTime()).whenCompleteAsync((r, e) -> {
+            inFlight.decrementAndGet();
+            loop(running, stopped);
+        }, io);
+    }
+
+    private void discardStats() {
+        stats.values().forEach(EndpointStats::interval);
+    }
+}
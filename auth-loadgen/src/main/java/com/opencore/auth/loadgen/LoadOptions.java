@@ -0,0 +1,98 @@
+package com.opencore.auth.loadgen;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+record LoadOptions(
+        URI base,
+        Model model,
+        List<Integer> loads,
+        int warmupSeconds,
+        int durationSeconds,
+        int population,
+        Map<String, Integer> devices,
+        int refreshesPerLogin,
+        double revokeRatio,
+        int maxInFlight,
+        int ioThreads,
+        Path out
+) {
+    enum Model {
+        /** Logins arrive at a fixed rate regardless of how fast the service answers; loads are logins per second. */
+        OPEN,
+        /** A fixed number of users each run logins back to back; loads are concurrent users. */
+        CLOSED
+    }
+
+    static final String USAGE = """
+            usage: java -jar auth-loadgen.jar [--option=value ...]
+              --base=http://localhost:8081      auth-service (or gateway prefix, e.g. http://localhost:8080/auth)
+              --model=open|closed               open: fixed login arrival rate, closed: fixed concurrent users
+              --loads=250,500,1000,2000         logins/s (open) or users (closed), one curve point each
+              --warmup=5 --duration=30          seconds per point
+              --population=100000               distinct emails, each with its own client IP
+              --devices=ios:50,android:30,web:20
+              --refreshes=3                     token refreshes per login
+              --revokeRatio=0.5                 fraction of logins that end with a session revoke
+              --maxInFlight=20000               open model: abort a point once this many logins are queued
+              --ioThreads=4
+              --out=target/loadgen
+            """;
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> kv = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("unrecognized argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            kv.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        Model model = Model.valueOf(kv.getOrDefault("model", "open").toUpperCase());
+        String defaultLoads = model == Model.OPEN ? "250,500,1000,2000" : "8,32,128";
+        String base = kv.getOrDefault("base", "http://localhost:8081");
+        LoadOptions options = new LoadOptions(
+                URI.create(base.endsWith("/") ? base.substring(0, base.length() - 1) : base),
+                model,
+                ints(kv.getOrDefault("loads", defaultLoads)),
+                Integer.parseInt(kv.getOrDefault("warmup", "5")),
+                Integer.parseInt(kv.getOrDefault("duration", "30")),
+                Integer.parseInt(kv.getOrDefault("population", "100000")),
+                weights(kv.getOrDefault("devices", "ios:50,android:30,web:20")),
+                Integer.parseInt(kv.getOrDefault("refreshes", "3")),
+                Double.parseDouble(kv.getOrDefault("revokeRatio", "0.5")),
+                Integer.parseInt(kv.getOrDefault("maxInFlight", "20000")),
+                Integer.parseInt(kv.getOrDefault("ioThreads", "4")),
+                Path.of(kv.getOrDefault("out", "target/loadgen"))
+        );
+        kv.keySet().removeAll(List.of("base", "model", "loads", "warmup", "duration", "population", "devices",
+                "refreshes", "revokeRatio", "maxInFlight", "ioThreads", "out"));
+        if (!kv.isEmpty()) {
+            throw new IllegalArgumentException("unknown options: " + kv.keySet());
+        }
+        return options;
+    }
+
+    private static List<Integer> ints(String csv) {
+        List<Integer> out = new ArrayList<>();
+        for (String s : csv.split(",")) {
+            out.add(Integer.parseInt(s.trim()));
+        }
+        return out;
+    }
+
+    private static Map<String, Integer> weights(String csv) {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (String s : csv.split(",")) {
+            String[] parts = s.trim().split(":");
+            out.put(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+        }
+        return out;
+    }
+}
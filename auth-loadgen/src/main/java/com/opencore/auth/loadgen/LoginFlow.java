@@ -0,0 +1,113 @@
+package com.opencore.auth.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One user login as the smoke test does it: OTP request, OTP verify, a number of refresh rotations and optionally a
+ * revoke. Every user in the population has its own email and X-Forwarded-For address, so lockout and rate limits see
+ * distinct clients.
+ *
+ * The first request's latency is measured from the time the login was scheduled to start, not from when it was sent,
+ * so a stalled service shows up as latency instead of silently lowering the offered load (coordinated omission).
+ * Later requests depend on the previous response and are measured from when they were sent.
+ */
+final class LoginFlow {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient http;
+    private final LoadOptions options;
+    private final Map<Endpoint, URI> uris = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, EndpointStats> stats;
+    private final String[] devices;
+    private final int[] cumulativeWeights;
+
+    LoginFlow(HttpClient http, LoadOptions options, Map<Endpoint, EndpointStats> stats) {
+        this.http = http;
+        this.options = options;
+        this.stats = stats;
+        for (Endpoint e : Endpoint.values()) {
+            uris.put(e, URI.create(options.base() + e.path));
+        }
+        this.devices = options.devices().keySet().toArray(new String[0]);
+        this.cumulativeWeights = new int[devices.length];
+        int total = 0;
+        for (int i = 0; i < devices.length; i++) {
+            total += options.devices().get(devices[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /** Runs one login; the future completes (never exceptionally) when the last request has been answered. */
+    CompletableFuture<Void> run(long intendedStartNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = random.nextInt(options.population());
+        String email = "load+" + user + "@example.com";
+        String ip = "10." + ((user >> 16) & 0xFF) + "." + ((user >> 8) & 0xFF) + "." + (user & 0xFF);
+        String device = pickDevice(random);
+        boolean revoke = random.nextDouble() < options.revokeRatio();
+
+        CompletableFuture<JsonNode> flow = call(Endpoint.OTP_REQUEST, ip, intendedStartNanos,
+                "{\"email\":\"" + email + "\",\"deviceId\":\"" + device + "\"}")
+                .thenCompose(otp -> call(Endpoint.OTP_VERIFY, ip, System.nanoTime(),
+                        "{\"email\":\"" + email + "\",\"otp\":\"" + otp.path("devOtp").asText()
+                                + "\",\"requestId\":\"" + otp.path("requestId").asText()
+                                + "\",\"deviceId\":\"" + device + "\"}"));
+        for (int i = 0; i < options.refreshesPerLogin(); i++) {
+            flow = flow.thenCompose(tokens -> call(Endpoint.TOKEN_REFRESH, ip, System.nanoTime(), refreshBody(tokens)));
+        }
+        if (revoke) {
+            flow = flow.thenCompose(tokens -> call(Endpoint.SESSION_REVOKE, ip, System.nanoTime(), refreshBody(tokens)));
+        }
+        // A failed step ends the login; it has already been counted against its endpoint.
+        return flow.handle((r, e) -> null);
+    }
+
+    private CompletableFuture<JsonNode> call(Endpoint endpoint, String ip, long startNanos, String body) {
+        HttpRequest request = HttpRequest.newBuilder(uris.get(endpoint))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .header("X-Forwarded-For", ip)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        EndpointStats s = stats.get(endpoint);
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .handle((response, error) -> {
+                    boolean ok = error == null && response.statusCode() == 200;
+                    s.record(startNanos, System.nanoTime(), ok);
+                    if (!ok) {
+                        throw new CompletionException(error != null ? error
+                                : new IllegalStateException(endpoint.label + " returned " + response.statusCode()));
+                    }
+                    try {
+                        return JSON.readTree(response.body());
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    private String pickDevice(ThreadLocalRandom random) {
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (r < cumulativeWeights[i]) return devices[i];
+        }
+        return devices[devices.length - 1];
+    }
+
+    private static String refreshBody(JsonNode tokens) {
+        return "{\"refreshToken\":\"" + tokens.path("refreshToken").asText() + "\"}";
+    }
+}
@@ -3,6 +3,7 @@ package com.opencore.auth.api;
 import com.opencore.auth.api.dto.*;
 import com.opencore.auth.core.AuthService;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -10,24 +11,26 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping("/v1/auth")
 public class AuthController {
     private final AuthService authService;
+    private final ClientIpResolver clientIps;
 
-    public AuthController(AuthService authService) {
+    public AuthController(AuthService authService, ClientIpResolver clientIps) {
         this.authService = authService;
+        this.clientIps = clientIps;
     }
 
     @PostMapping("/login/email-otp/request")
     public ResponseEntity<OtpRequestResponse> requestOtp(@RequestBody OtpRequestRequest request, HttpServletRequest http) {
-        return ResponseEntity.ok(authService.requestOtp(request, clientIp(http)));
+        return ResponseEntity.ok(authService.requestOtp(request, clientIps.resolve(http)));
     }
 
     @PostMapping("/login/email-otp/verify")
     public ResponseEntity<OtpVerifyResponse> verifyOtp(@RequestBody OtpVerifyRequest request, HttpServletRequest http) {
-        return ResponseEntity.ok(authService.verifyOtp(request, clientIp(http)));
+        return ResponseEntity.ok(authService.verifyOtp(request, clientIps.resolve(http)));
     }
 
     @PostMapping("/token/refresh")
     public ResponseEntity<TokenRefreshResponse> refresh(@RequestBody TokenRefreshRequest request, HttpServletRequest http) {
-        return ResponseEntity.ok(authService.refresh(request, clientIp(http)));
+        return ResponseEntity.ok(authService.refresh(request, clientIps.resolve(http)));
     }
 
     @PostMapping("/sessions/revoke")
@@ -36,6 +39,23 @@ public class AuthController {
         return ResponseEntity.ok(new SessionRevokeResponse(true));
     }
 
+    @GetMapping("/sessions")
+    public ResponseEntity<SessionListResponse> sessions(
+            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        return ResponseEntity.ok(authService.listSessions(bearer(authorization)));
+    }
+
+    @PostMapping("/sessions/revoke-all")
+    public ResponseEntity<SessionRevokeAllResponse> revokeAll(
+            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        return ResponseEntity.ok(authService.revokeAllSessions(bearer(authorization)));
+    }
+
+    @PostMapping("/token/introspect")
+    public ResponseEntity<TokenIntrospectResponse> introspect(@RequestBody TokenIntrospectRequest request) {
+        return ResponseEntity.ok(authService.introspect(request));
+    }
+
     @GetMapping("/oauth2/{provider}/start")
     public ResponseEntity<String> oauthStart(@PathVariable String provider) {
         return ResponseEntity.status(501).body("oauth2 start not implemented: " + provider);
@@ -46,11 +66,8 @@ public class AuthController {
         return ResponseEntity.status(501).body("oauth2 callback not implemented: " + provider);
     }
 
-    private static String clientIp(HttpServletRequest request) {
-        String xff = request.getHeader("X-Forwarded-For");
-        if (xff != null && !xff.isBlank()) {
-            return xff.split(",")[0].trim();
-        }
-        return request.getRemoteAddr();
+    private static String bearer(String authorization) {
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return authorization.substring(7);
     }
 }
@@ -0,0 +1,106 @@
+package com.opencore.auth.api;
+
+import com.opencore.auth.core.OpenCoreClientIpProperties;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The address a request came from, for per-IP limits.
+ *
+ * X-Forwarded-For is only believed when the connection comes from one of opencore.client-ip trustedProxies, and then
+ * only from the right: each trusted proxy appends the address it saw, so the client is the right-most entry that is
+ * not itself a trusted proxy. Entries to the left of it were written by the client and are ignored. With no trusted
+ * proxies the header is ignored altogether and the peer address is used.
+ */
+@Component
+public class ClientIpResolver {
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    private final List<Cidr> trusted;
+
+    public ClientIpResolver(OpenCoreClientIpProperties props) {
+        List<Cidr> cidrs = new ArrayList<>();
+        for (String p : props.trustedProxies()) {
+            cidrs.add(Cidr.parse(p));
+        }
+        this.trusted = List.copyOf(cidrs);
+    }
+
+    public String resolve(HttpServletRequest request) {
+        String peer = request.getRemoteAddr();
+        if (!trusted(peer)) return peer;
+        List<String> hops = new ArrayList<>();
+        for (String header : Collections.list(request.getHeaders("X-Forwarded-For"))) {
+            for (String hop : header.split(",")) {
+                hop = hop.trim();
+                if (!hop.isEmpty()) hops.add(hop);
+            }
+        }
+        for (int i = hops.size() - 1; i >= 0; i--) {
+            if (!trusted(hops.get(i))) return hops.get(i);
+        }
+        // Every hop is a trusted proxy: the request started inside the trusted network.
+        return hops.isEmpty() ? peer : hops.get(0);
+    }
+
+    private boolean trusted(String address) {
+        if (trusted.isEmpty()) return false;
+        byte[] bytes = literal(address);
+        if (bytes == null) return false;
+        for (Cidr c : trusted) {
+            if (c.contains(bytes)) return true;
+        }
+        return false;
+    }
+
+    // Only literals are parsed: handing InetAddress anything else could make it resolve a client-chosen name.
+    private static byte[] literal(String address) {
+        if (address == null || (address.indexOf(':') < 0 && !IPV4.matcher(address).matches())) return null;
+        try {
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private record Cidr(byte[] network, int bits) {
+        static Cidr parse(String spec) {
+            int slash = spec.indexOf('/');
+            byte[] network = literal(slash < 0 ? spec : spec.substring(0, slash));
+            if (network == null) {
+                throw new IllegalArgumentException("opencore.client-ip.trustedProxies: not an IP address or CIDR: " + spec);
+            }
+            int bits = network.length * 8;
+            if (slash >= 0) {
+                try {
+                    bits = Integer.parseInt(spec.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    bits = -1;
+                }
+                if (bits < 0 || bits > network.length * 8) {
+                    throw new IllegalArgumentException("opencore.client-ip.trustedProxies: bad prefix length: " + spec);
+                }
+            }
+            return new Cidr(network, bits);
+        }
+
+        boolean contains(byte[] address) {
+            if (address.length != network.length) return false;
+            int full = bits / 8;
+            for (int i = 0; i < full; i++) {
+                if (address[i] != network[i]) return false;
+            }
+            int rest = bits % 8;
+            if (rest == 0) return true;
+            int mask = 0xff << (8 - rest) & 0xff;
+            return (address[full] & mask) == (network[full] & mask);
+        }
+    }
+}
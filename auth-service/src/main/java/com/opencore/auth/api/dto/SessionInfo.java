@@ -0,0 +1,6 @@
+package com.opencore.auth.api.dto;
+
+public record SessionInfo(
+        String deviceId,
+        long expiresAtEpochSeconds
+) {}
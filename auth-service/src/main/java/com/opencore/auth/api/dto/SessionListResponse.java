@@ -0,0 +1,7 @@
+package com.opencore.auth.api.dto;
+
+import java.util.List;
+
+public record SessionListResponse(
+        List<SessionInfo> sessions
+) {}
@@ -0,0 +1,5 @@
+package com.opencore.auth.api.dto;
+
+public record SessionRevokeAllResponse(
+        int revoked
+) {}
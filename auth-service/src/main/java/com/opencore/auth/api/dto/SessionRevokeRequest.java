@@ -1,5 +1,7 @@
 package com.opencore.auth.api.dto;
 
 public record SessionRevokeRequest(
-        String refreshToken
+        String refreshToken,
+        // Optional. Also rejects this access token everywhere until it expires.
+        String accessToken
 ) {}
@@ -0,0 +1,8 @@
+package com.opencore.auth.api.dto;
+
+public record TokenIntrospectResponse(
+        boolean active,
+        String subject,
+        String role,
+        long expEpochSeconds
+) {}
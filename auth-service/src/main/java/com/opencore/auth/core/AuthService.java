@@ -1,11 +1,16 @@
 package com.opencore.auth.core;
 
 import com.opencore.auth.api.dto.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.UUID;
 
 @Service
@@ -14,14 +19,48 @@ public class AuthService {
     private final InMemoryOtpStore otpStore;
     private final InMemorySessionStore sessions;
     private final BruteForceProtector bruteForce;
+    private final RevocationFilter revocations;
+    private final OtpRateLimiter otpRateLimiter;
+    private final RefreshHandleCodec refreshHandles;
     private final OpenCoreJwtProperties props;
-
-    public AuthService(OpenCoreJwtProperties props) {
+    private final AuthStatePersistence persistence;
+
+    public AuthService(
+            OpenCoreJwtProperties props,
+            OpenCoreStateProperties stateProps,
+            OpenCoreBruteForceProperties bruteForceProps,
+            OpenCoreOtpRateLimitProperties otpRateLimitProps,
+            MeterRegistry meterRegistry
+    ) {
         this.props = props;
         this.jwt = new JwtService(props);
-        this.otpStore = new InMemoryOtpStore();
-        this.sessions = new InMemorySessionStore();
-        this.bruteForce = new BruteForceProtector();
+        this.otpStore = new InMemoryOtpStore(keyFrom("otp", props.secret()));
+        this.sessions = new InMemorySessionStore(props.refreshTtlSeconds());
+        this.bruteForce = new BruteForceProtector(bruteForceProps, seedFrom("bruteforce", props.secret()));
+        this.revocations = new RevocationFilter();
+        this.otpRateLimiter = new OtpRateLimiter(otpRateLimitProps, seedFrom("otp-rate-limit", props.secret()));
+        this.refreshHandles = new RefreshHandleCodec(props.secret());
+        otpStore.bindTo(meterRegistry);
+        bruteForce.bindTo(meterRegistry);
+        revocations.bindTo(meterRegistry);
+        otpRateLimiter.bindTo(meterRegistry);
+        this.persistence = stateProps.persistent()
+                ? AuthStatePersistence.open(stateProps, sessions, otpStore, bruteForce, revocations)
+                : null;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (persistence != null) {
+            persistence.close();
+        }
+        otpStore.close();
+        bruteForce.close();
+        revocations.close();
+    }
+
+    public RevocationFilter revocations() {
+        return revocations;
     }
 
     public OtpRequestResponse requestOtp(OtpRequestRequest request, String clientIp) {
@@ -29,6 +68,10 @@ public class AuthService {
         if (email.isBlank()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "email required");
         }
+        long retryAfterMillis = otpRateLimiter.tryAcquire(email, clientIp == null ? "" : clientIp);
+        if (retryAfterMillis > 0) {
+            throw new RetryAfterException("too many OTP requests", retryAfterMillis);
+        }
 
         var issued = otpStore.issue(email);
         // In production: send OTP via email provider.
@@ -43,30 +86,28 @@ public class AuthService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "email, otp, requestId required");
         }
 
-        String key = "email=" + email + "|ip=" + (clientIp == null ? "" : clientIp);
-        if (bruteForce.isBlocked(key)) {
+        String ip = clientIp == null ? "" : clientIp;
+        if (bruteForce.isBlocked(email, ip)) {
             throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "too many failed attempts");
         }
 
         boolean ok = otpStore.verify(email, otp, requestId);
         if (!ok) {
-            bruteForce.onFailure(key);
+            bruteForce.onFailure(email, ip);
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "invalid otp");
         }
 
-        bruteForce.onSuccess(key);
+        bruteForce.onSuccess(email, ip);
 
         String userId = userIdFromEmail(email);
         String role = "User";
 
         String access = jwt.issueAccessToken(userId, role);
-        var issuedRefresh = jwt.issueRefreshToken(userId, request.deviceId());
-        sessions.put(
-                issuedRefresh.jti(),
-                new InMemorySessionStore.Session(userId, request.deviceId(), issuedRefresh.expEpochSeconds(), false)
-        );
+        UUID jti = RefreshHandleCodec.newId();
+        long exp = refreshExpiry();
+        sessions.put(jti.toString(), new InMemorySessionStore.Session(userId, request.deviceId(), exp));
 
-        return new OtpVerifyResponse(access, issuedRefresh.token(), props.accessTtlSeconds());
+        return new OtpVerifyResponse(access, encodeRefresh(jti, userId, request.deviceId(), exp), props.accessTtlSeconds());
     }
 
     public TokenRefreshResponse refresh(TokenRefreshRequest request, String clientIp) {
@@ -75,43 +116,108 @@ public class AuthService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "refreshToken required");
         }
 
-        JwtService.ParsedToken parsed;
-        try {
-            parsed = jwt.parseAndVerify(token);
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "invalid refresh token");
-        }
-
-        if (!"refresh".equals(parsed.typ()) || parsed.jti() == null || parsed.jti().isBlank()) {
+        UUID jti = refreshJti(token);
+        if (jti == null) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "invalid refresh token");
         }
 
-        var session = sessions.get(parsed.jti());
-        if (session == null || session.revoked() || session.isExpired()) {
+        // Rotation claims the old session atomically, so of two concurrent refreshes of one token only one succeeds.
+        UUID next = RefreshHandleCodec.newId();
+        long exp = refreshExpiry();
+        var session = sessions.rotate(jti, next, exp);
+        if (session == null) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "session revoked or expired");
         }
 
-        // Rotate refresh token.
-        sessions.revoke(parsed.jti());
-        var newRefresh = jwt.issueRefreshToken(session.userId(), session.deviceId());
-        sessions.put(newRefresh.jti(), new InMemorySessionStore.Session(session.userId(), session.deviceId(), newRefresh.expEpochSeconds(), false));
-
         String access = jwt.issueAccessToken(session.userId(), "User");
-        return new TokenRefreshResponse(access, newRefresh.token(), props.accessTtlSeconds());
+        String refresh = encodeRefresh(next, session.userId(), session.deviceId(), exp);
+        return new TokenRefreshResponse(access, refresh, props.accessTtlSeconds());
     }
 
     public void revoke(SessionRevokeRequest request) {
-        String token = request.refreshToken() == null ? "" : request.refreshToken().trim();
-        if (token.isBlank()) {
-            return;
+        UUID jti = request.refreshToken() == null ? null : refreshJti(request.refreshToken().trim());
+        // A refresh token is only good while its session exists, and sessions live on one replica, so ending the
+        // session is enough. Only access tokens go through the replicated filter.
+        if (jti != null) {
+            sessions.take(jti);
+        }
+        JwtService.ParsedToken access = parseQuietly(request.accessToken());
+        if (access != null && "access".equals(access.typ())) {
+            revocations.revoke(access.jti(), access.expEpochSeconds());
+        }
+    }
+
+    /** The caller's live sessions on this node, one per signed-in device. */
+    public SessionListResponse listSessions(String accessToken) {
+        JwtService.ParsedToken caller = requireAccess(accessToken);
+        var sessions = this.sessions.listForUser(caller.subject()).stream()
+                .map(s -> new SessionInfo(s.deviceId(), s.expiresAtEpochSeconds()))
+                .toList();
+        return new SessionListResponse(sessions);
+    }
+
+    /** Signs the caller out everywhere: ends all their sessions on this node and rejects the presented access token. */
+    public SessionRevokeAllResponse revokeAllSessions(String accessToken) {
+        JwtService.ParsedToken caller = requireAccess(accessToken);
+        int revoked = sessions.revokeAllForUser(caller.subject());
+        revocations.revoke(caller.jti(), caller.expEpochSeconds());
+        return new SessionRevokeAllResponse(revoked);
+    }
+
+    public TokenIntrospectResponse introspect(TokenIntrospectRequest request) {
+        JwtService.ParsedToken parsed = parseQuietly(request.token());
+        if (parsed == null || !"access".equals(parsed.typ()) || revocations.isRevoked(parsed.jti())) {
+            return new TokenIntrospectResponse(false, null, null, 0);
+        }
+        return new TokenIntrospectResponse(true, parsed.subject(), parsed.role(), parsed.expEpochSeconds());
+    }
+
+    private JwtService.ParsedToken requireAccess(String accessToken) {
+        JwtService.ParsedToken parsed = parseQuietly(accessToken);
+        if (parsed == null || !"access".equals(parsed.typ()) || revocations.isRevoked(parsed.jti())) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "valid access token required");
+        }
+        return parsed;
+    }
+
+    // The session id behind either kind of refresh token, or null if the token is invalid. JWT refresh tokens stay
+    // accepted whichever format is issued, so switching formats doesn't log anyone out.
+    private UUID refreshJti(String token) {
+        if (RefreshHandleCodec.looksLikeHandle(token)) {
+            return refreshHandles.decode(token);
+        }
+        JwtService.ParsedToken parsed = parseQuietly(token);
+        if (parsed == null || !"refresh".equals(parsed.typ())) {
+            return null;
         }
         try {
-            JwtService.ParsedToken parsed = jwt.parseAndVerify(token);
-            if (parsed.jti() != null && !parsed.jti().isBlank()) {
-                sessions.revoke(parsed.jti());
-            }
-        } catch (Exception ignored) {
-            // Idempotent
+            return UUID.fromString(parsed.jti());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String encodeRefresh(UUID jti, String userId, String deviceId, long exp) {
+        return props.refreshTokenFormat() == OpenCoreJwtProperties.RefreshTokenFormat.OPAQUE
+                ? refreshHandles.encode(jti)
+                : jwt.encodeRefreshToken(userId, jti.toString(), deviceId, exp);
+    }
+
+    private long refreshExpiry() {
+        return System.currentTimeMillis() / 1000 + props.refreshTtlSeconds();
+    }
+
+    // Null for anything that isn't a valid, unexpired token carrying a jti. Revocation is idempotent, so bad input is
+    // simply ignored.
+    private JwtService.ParsedToken parseQuietly(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            JwtService.ParsedToken parsed = jwt.parseAndVerify(token.trim());
+            return parsed.jti() == null || parsed.jti().isBlank() ? null : parsed;
+        } catch (Exception e) {
+            return null;
         }
     }
 
@@ -119,6 +225,19 @@ public class AuthService {
         return email == null ? "" : email.trim().toLowerCase();
     }
 
+    // Stable across restarts and replicas (journaled counters stay addressable) but unknown to clients.
+    private static long seedFrom(String purpose, String secret) {
+        return ByteBuffer.wrap(keyFrom(purpose, secret)).getLong();
+    }
+
+    private static byte[] keyFrom(String purpose, String secret) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest((purpose + ":" + secret).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private static String userIdFromEmail(String email) {
         return UUID.nameUUIDFromBytes(email.getBytes(StandardCharsets.UTF_8)).toString();
     }
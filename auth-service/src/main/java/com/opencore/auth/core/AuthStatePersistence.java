@@ -0,0 +1,228 @@
+package com.opencore.auth.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes sessions, OTPs, lockout counters and token revocations survive restarts: recovers them from the last snapshot plus the journal
+ * tail, then journals every mutation and periodically compacts the journal into a new snapshot.
+ *
+ * Snapshots are fuzzy. The journal is rolled first and the stores are copied while traffic continues, which is safe
+ * because every record sets the absolute state of one key, so replaying the newer segments over the copy converges.
+ */
+final class AuthStatePersistence implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(AuthStatePersistence.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x4F43534E;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT = "snapshot.bin";
+
+    private final Path directory;
+    private final InMemorySessionStore sessions;
+    private final InMemoryOtpStore otps;
+    private final BruteForceProtector bruteForce;
+    private final RevocationFilter revocations;
+    private final MappedStateJournal journal;
+    private final ScheduledExecutorService scheduler;
+
+    private AuthStatePersistence(
+            OpenCoreStateProperties props,
+            InMemorySessionStore sessions,
+            InMemoryOtpStore otps,
+            BruteForceProtector bruteForce,
+            RevocationFilter revocations
+    ) throws IOException {
+        this.directory = Path.of(props.directory());
+        this.sessions = sessions;
+        this.otps = otps;
+        this.bruteForce = bruteForce;
+        this.revocations = revocations;
+        Files.createDirectories(directory);
+
+        long started = System.nanoTime();
+        long nextSequence = recover();
+        log.info("auth state recovered from {} in {} ms: sessions={}",
+                directory, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), sessions.size());
+
+        long segmentBytes = Math.min(Integer.MAX_VALUE, Math.max(1 << 20, props.journalSegmentBytes()));
+        this.journal = new MappedStateJournal(directory, nextSequence, segmentBytes);
+        sessions.journalTo(journal);
+        otps.journalTo(journal);
+        bruteForce.journalTo(journal);
+        revocations.journalTo(journal);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "auth-state-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        long flushMillis = Math.max(1, props.flushIntervalMillis());
+        scheduler.scheduleWithFixedDelay(journal::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        if (props.snapshotIntervalSeconds() > 0) {
+            scheduler.scheduleWithFixedDelay(this::snapshotQuietly,
+                    props.snapshotIntervalSeconds(), props.snapshotIntervalSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    static AuthStatePersistence open(
+            OpenCoreStateProperties props,
+            InMemorySessionStore sessions,
+            InMemoryOtpStore otps,
+            BruteForceProtector bruteForce,
+            RevocationFilter revocations
+    ) {
+        try {
+            return new AuthStatePersistence(props, sessions, otps, bruteForce, revocations);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to open auth state in " + props.directory(), e);
+        }
+    }
+
+    synchronized void snapshot() throws IOException {
+        long keepFrom = journal.roll();
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(keepFrom);
+            SnapshotWriter writer = new SnapshotWriter(out);
+            sessions.forEach(writer::sessionPut);
+            otps.forEach(writer::otpIssued);
+            bruteForce.forEach(writer::failuresUpdated);
+            revocations.forEach(writer::tokenRevoked);
+            if (writer.failure != null) throw writer.failure;
+            out.writeInt(0);
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        journal.deleteSegmentsBefore(keepFrom);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        journal.flush();
+        snapshotQuietly();
+        journal.close();
+    }
+
+    private long recover() throws IOException {
+        Restorer restorer = new Restorer();
+        long replayFrom = 0;
+        long records = 0;
+
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16))) {
+                if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                    throw new IOException("unrecognized snapshot " + snapshot);
+                }
+                replayFrom = in.readLong();
+                records += StateRecords.replay(in, restorer);
+            }
+        }
+
+        long next = replayFrom;
+        for (MappedStateJournal.Segment s : MappedStateJournal.segments(directory)) {
+            if (s.sequence() < replayFrom) continue;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(s.path()), 1 << 16))) {
+                records += StateRecords.replay(in, restorer);
+            }
+            next = s.sequence() + 1;
+        }
+        log.info("auth state replayed {} records", records);
+        // Never append to a recovered segment: its tail may hold a torn record.
+        return next;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.warn("auth state snapshot failed", e);
+        }
+    }
+
+    private final class Restorer implements StateJournal {
+        private final long nowSeconds = System.currentTimeMillis() / 1000;
+
+        @Override
+        public void sessionPut(long jtiHi, long jtiLo, long userHi, long userLo, String deviceId, long expiresAtEpochSeconds) {
+            if (expiresAtEpochSeconds > nowSeconds) {
+                sessions.put(new UUID(jtiHi, jtiLo).toString(),
+                        new InMemorySessionStore.Session(new UUID(userHi, userLo).toString(), deviceId, expiresAtEpochSeconds));
+            }
+        }
+
+        @Override
+        public void sessionRevoked(long jtiHi, long jtiLo) {
+            sessions.revoke(new UUID(jtiHi, jtiLo).toString());
+        }
+
+        @Override
+        public void otpIssued(String email, byte[] codeHash, String requestId, long expiresAtEpochMillis) {
+            otps.restore(email, codeHash, requestId, expiresAtEpochMillis);
+        }
+
+        @Override
+        public void otpRemoved(String email) {
+            otps.restoreRemoved(email);
+        }
+
+        @Override
+        public void failuresUpdated(byte dimension, long keyHash, long state) {
+            bruteForce.restore(dimension, keyHash, state);
+        }
+
+        @Override
+        public void failuresCleared(byte dimension, long keyHash) {
+            bruteForce.restoreCleared(dimension, keyHash);
+        }
+
+        @Override
+        public void tokenRevoked(long jtiHi, long jtiLo, long expEpochSeconds) {
+            revocations.apply(jtiHi, jtiLo, expEpochSeconds);
+        }
+    }
+
+    private static final class SnapshotWriter extends StateRecords.Writer {
+        private final DataOutputStream out;
+        private IOException failure;
+
+        SnapshotWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        protected void writeFrame(byte[] payload, int length, int crc) {
+            if (failure != null) return;
+            try {
+                out.writeInt(length);
+                out.writeInt(crc);
+                out.write(payload, 0, length);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -1,39 +1,356 @@
 package com.opencore.auth.core;
 
-import java.time.Duration;
-import java.time.Instant;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 
-public class BruteForceProtector {
-    private static final Duration WINDOW = Duration.ofMinutes(15);
-    private static final int MAX_FAILURES = 5;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
-    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+/**
+ * Counts failed OTP verifications per email+IP pair, per email and per IP within a fixed window. A dimension whose
+ * limit is 0 is off: nothing is counted or blocked in it.
+ *
+ * Each dimension is a fixed-size, sharded open-addressing table of (key hash, packed state) longs, so memory is
+ * capped up front and no objects are allocated per failure. When a probe window is full a counter is evicted,
+ * unblocked ones first. Reads are lock-free; writers take a per-shard lock, and a background task zeroes expired
+ * entries so their slots can be reused.
+ */
+public class BruteForceProtector implements MeterBinder, AutoCloseable {
+    static final byte PAIR = 0;
+    static final byte EMAIL = 1;
+    static final byte IP = 2;
 
-    public void onFailure(String key) {
-        buckets.compute(key, (k, existing) -> {
-            Bucket b = existing == null ? new Bucket(0, Instant.now().plus(WINDOW)) : existing;
-            if (Instant.now().isAfter(b.resetAt())) {
-                return new Bucket(1, Instant.now().plus(WINDOW));
-            }
-            return new Bucket(b.failures() + 1, b.resetAt());
+    private static final String[] DIMENSION_NAMES = {"email_ip", "email", "ip"};
+    private static final int SHARDS = 16;
+    private static final int MAX_PROBE = 16;
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final long seed;
+    private final long windowMillis;
+    private final Dimension[] dimensions;
+    private final ScheduledExecutorService sweeper;
+    private volatile StateJournal journal = StateJournal.NONE;
+
+    public BruteForceProtector(OpenCoreBruteForceProperties props, long seed) {
+        this.seed = seed;
+        this.windowMillis = TimeUnit.SECONDS.toMillis(props.windowSeconds());
+        this.dimensions = new Dimension[] {
+                new Dimension(PAIR, props.maxFailuresPerEmailAndIp(), props.maxKeys()),
+                new Dimension(EMAIL, props.maxFailuresPerEmail(), props.maxKeys()),
+                new Dimension(IP, props.maxFailuresPerIp(), props.maxKeys())
+        };
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "auth-bruteforce-sweeper");
+            t.setDaemon(true);
+            return t;
         });
+        long interval = Math.max(1, props.sweepIntervalSeconds());
+        sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public void onFailure(String email, String ip) {
+        long now = System.currentTimeMillis();
+        long emailHash = hash(email);
+        long ipHash = hash(ip);
+        dimensions[PAIR].recordFailure(pair(emailHash, ipHash), now);
+        dimensions[EMAIL].recordFailure(emailHash, now);
+        dimensions[IP].recordFailure(ipHash, now);
+    }
+
+    // A successful login proves ownership of the email; the IP keeps its count so a sprayer can't reset it.
+    public void onSuccess(String email, String ip) {
+        long emailHash = hash(email);
+        dimensions[PAIR].clear(pair(emailHash, hash(ip)), true);
+        dimensions[EMAIL].clear(emailHash, true);
+    }
+
+    public boolean isBlocked(String email, String ip) {
+        long now = System.currentTimeMillis();
+        long emailHash = hash(email);
+        long ipHash = hash(ip);
+        return dimensions[PAIR].blocked(pair(emailHash, ipHash), now)
+                || dimensions[EMAIL].blocked(emailHash, now)
+                || dimensions[IP].blocked(ipHash, now);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (int d = 0; d < dimensions.length; d++) {
+            Dimension dim = dimensions[d];
+            String name = DIMENSION_NAMES[d];
+            Gauge.builder("opencore.auth.bruteforce.keys", dim, Dimension::live)
+                    .tag("dimension", name)
+                    .description("Tracked failure counters, including expired ones not yet swept")
+                    .register(registry);
+            Gauge.builder("opencore.auth.bruteforce.blocked", dim, Dimension::blocked)
+                    .tag("dimension", name)
+                    .description("Failure counters at or above the blocking threshold")
+                    .register(registry);
+            FunctionCounter.builder("opencore.auth.bruteforce.evictions", dim, Dimension::evictions)
+                    .tag("dimension", name)
+                    .description("Counters evicted because their probe window was full")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    void journalTo(StateJournal journal) {
+        this.journal = journal;
+    }
+
+    void restore(byte dimension, long keyHash, long state) {
+        dimensions[dimension].put(keyHash, state);
+    }
+
+    void restoreCleared(byte dimension, long keyHash) {
+        dimensions[dimension].clear(keyHash, false);
+    }
+
+    void forEach(FailureVisitor visitor) {
+        for (Dimension d : dimensions) {
+            d.forEach(visitor);
+        }
+    }
+
+    void sweep() {
+        long now = System.currentTimeMillis();
+        for (Dimension d : dimensions) {
+            d.sweep(now);
+        }
+    }
+
+    // Keyed by a secret seed so clients can't craft keys that collide into one probe window.
+    private long hash(String s) {
+        long h = seed;
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001B3L;
+            }
+        }
+        h = mix(h);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long pair(long emailHash, long ipHash) {
+        long h = mix(emailHash * 0x9E3779B97F4A7C15L ^ ipHash);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static int count(long state) {
+        return (int) (state & COUNT_MASK);
+    }
+
+    private static long resetAt(long state) {
+        return state >>> COUNT_BITS;
+    }
+
+    private static boolean expired(long state, long now) {
+        return state == 0 || now > resetAt(state);
     }
 
-    public void onSuccess(String key) {
-        buckets.remove(key);
+    interface FailureVisitor {
+        void visit(byte dimension, long keyHash, long state);
     }
 
-    public boolean isBlocked(String key) {
-        Bucket b = buckets.get(key);
-        if (b == null) return false;
-        if (Instant.now().isAfter(b.resetAt())) {
-            buckets.remove(key);
+    private final class Dimension {
+        private final byte id;
+        private final int limit;
+        private final Shard[] shards = new Shard[SHARDS];
+
+        Dimension(byte id, int limit, int maxKeys) {
+            this.id = id;
+            this.limit = limit;
+            int perShard = Integer.highestOneBit(Math.max(MAX_PROBE, maxKeys / SHARDS));
+            for (int i = 0; i < SHARDS; i++) {
+                shards[i] = new Shard(perShard);
+            }
+        }
+
+        boolean blocked(long h, long now) {
+            if (limit <= 0) return false;
+            Shard s = shards[(int) (h >>> 60)];
+            AtomicLongArray t = s.slots;
+            int i = (int) h & s.mask;
+            for (int p = 0; p < MAX_PROBE; p++, i = (i + 1) & s.mask) {
+                long k = t.get(2 * i);
+                if (k == 0) return false;
+                if (k == h) {
+                    long state = t.get(2 * i + 1);
+                    // A writer reusing the slot clears the state before changing the key, so re-checking the key
+                    // guarantees the state belongs to it.
+                    if (t.get(2 * i) != h) return blocked(h, now);
+                    return !expired(state, now) && count(state) >= limit;
+                }
+            }
             return false;
         }
-        return b.failures() >= MAX_FAILURES;
+
+        void recordFailure(long h, long now) {
+            if (limit <= 0) return;
+            Shard s = shards[(int) (h >>> 60)];
+            synchronized (s) {
+                int i = s.slotFor(h, now, this);
+                long old = s.slots.get(2 * i + 1);
+                long state = expired(old, now)
+                        ? (now + windowMillis) << COUNT_BITS | 1
+                        : old + (count(old) < COUNT_MASK ? 1 : 0);
+                s.setState(i, old, state, limit);
+                journal.failuresUpdated(id, h, state);
+            }
+        }
+
+        void put(long h, long state) {
+            Shard s = shards[(int) (h >>> 60)];
+            synchronized (s) {
+                int i = s.slotFor(h, System.currentTimeMillis(), this);
+                s.setState(i, s.slots.get(2 * i + 1), state, limit);
+            }
+        }
+
+        void clear(long h, boolean journaled) {
+            Shard s = shards[(int) (h >>> 60)];
+            synchronized (s) {
+                int i = s.find(h);
+                if (i < 0) return;
+                long old = s.slots.get(2 * i + 1);
+                if (old == 0) return;
+                s.setState(i, old, 0, limit);
+                if (journaled) journal.failuresCleared(id, h);
+            }
+        }
+
+        void sweep(long now) {
+            for (Shard s : shards) {
+                synchronized (s) {
+                    for (int i = 0; i <= s.mask; i++) {
+                        long state = s.slots.get(2 * i + 1);
+                        if (state != 0 && now > resetAt(state)) {
+                            s.setState(i, state, 0, limit);
+                        }
+                    }
+                }
+            }
+        }
+
+        void forEach(FailureVisitor visitor) {
+            for (Shard s : shards) {
+                synchronized (s) {
+                    for (int i = 0; i <= s.mask; i++) {
+                        long state = s.slots.get(2 * i + 1);
+                        if (state != 0) {
+                            visitor.visit(id, s.slots.get(2 * i), state);
+                        }
+                    }
+                }
+            }
+        }
+
+        double live() {
+            long n = 0;
+            for (Shard s : shards) n += s.live;
+            return n;
+        }
+
+        double blocked() {
+            long n = 0;
+            for (Shard s : shards) n += s.blocked;
+            return n;
+        }
+
+        double evictions() {
+            long n = 0;
+            for (Shard s : shards) n += s.evictions;
+            return n;
+        }
     }
 
-    public record Bucket(int failures, Instant resetAt) {}
+    private static final class Shard {
+        // Interleaved (key hash, state) pairs; a zero key ends a probe chain, a zero state is a reusable slot.
+        final AtomicLongArray slots;
+        final int mask;
+        // Guarded by the shard lock; read unsynchronized by metrics.
+        volatile int live;
+        volatile int blocked;
+        volatile long evictions;
+
+        Shard(int capacity) {
+            this.slots = new AtomicLongArray(capacity * 2);
+            this.mask = capacity - 1;
+        }
+
+        int find(long h) {
+            int i = (int) h & mask;
+            for (int p = 0; p < MAX_PROBE; p++, i = (i + 1) & mask) {
+                long k = slots.get(2 * i);
+                if (k == h) return i;
+                if (k == 0) return -1;
+            }
+            return -1;
+        }
+
+        // Returns the slot holding h, claiming a free or expired slot if needed. As a last resort the counter closest
+        // to expiry is evicted, preferring ones below the limit so a flood of new keys can't unblock an attacker.
+        int slotFor(long h, long now, Dimension dim) {
+            int i = (int) h & mask;
+            int reusable = -1;
+            int victim = -1;
+            boolean victimBlocked = true;
+            long victimResetAt = Long.MAX_VALUE;
+            for (int p = 0; p < MAX_PROBE; p++, i = (i + 1) & mask) {
+                long k = slots.get(2 * i);
+                if (k == h) return i;
+                if (k == 0) {
+                    if (reusable < 0) reusable = i;
+                    break;
+                }
+                long state = slots.get(2 * i + 1);
+                if (expired(state, now)) {
+                    if (reusable < 0) reusable = i;
+                    continue;
+                }
+                boolean isBlocked = count(state) >= dim.limit;
+                if ((victimBlocked && !isBlocked) || (victimBlocked == isBlocked && resetAt(state) < victimResetAt)) {
+                    victim = i;
+                    victimBlocked = isBlocked;
+                    victimResetAt = resetAt(state);
+                }
+            }
+            if (reusable < 0) {
+                reusable = victim;
+                evictions++;
+            }
+            setState(reusable, slots.get(2 * reusable + 1), 0, dim.limit);
+            slots.set(2 * reusable, h);
+            return reusable;
+        }
+
+        void setState(int i, long old, long state, int limit) {
+            slots.set(2 * i + 1, state);
+            if (old != 0) {
+                live--;
+                if (count(old) >= limit) blocked--;
+            }
+            if (state != 0) {
+                live++;
+                if (count(state) >= limit) blocked++;
+            }
+        }
+    }
 }
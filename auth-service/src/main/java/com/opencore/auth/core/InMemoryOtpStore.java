@@ -1,42 +1,236 @@
 package com.opencore.auth.core;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.time.Duration;
-import java.time.Instant;
 import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pending email OTPs. Codes and request ids come from per-thread DRBG instances, so issuance doesn't contend on a
+ * shared SecureRandom. Every code has the same TTL, so issue order is expiry order: a FIFO of entries lets a
+ * background task evict expired, never-verified codes with bounded work per tick.
+ *
+ * Only an HMAC of each code, keyed by a server secret and bound to its email and request id, is kept, so neither
+ * memory nor the persisted state holds a code that could be replayed.
+ */
+public class InMemoryOtpStore implements MeterBinder, AutoCloseable {
+    private static final long TTL_MILLIS = Duration.ofMinutes(5).toMillis();
+    private static final int SWEEP_BUDGET_PER_TICK = 50_000;
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(InMemoryOtpStore::newRandom);
 
-public class InMemoryOtpStore {
-    private static final Duration TTL = Duration.ofMinutes(5);
-    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Mac> macs;
     private final Map<String, Entry> byEmail = new ConcurrentHashMap<>();
+    private final Queue<Entry> byExpiry = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService sweeper;
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private volatile StateJournal journal = StateJournal.NONE;
+
+    public InMemoryOtpStore(byte[] codeKey) {
+        SecretKeySpec key = new SecretKeySpec(codeKey, "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(() -> newMac(key));
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "auth-otp-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(() -> sweep(SWEEP_BUDGET_PER_TICK), 1, 1, TimeUnit.SECONDS);
+    }
 
     public OtpIssue issue(String email) {
-        String requestId = UUID.randomUUID().toString();
-        String otp = String.format("%06d", random.nextInt(1_000_000));
-        byEmail.put(normalize(email), new Entry(otp, Instant.now().plus(TTL), requestId));
+        SecureRandom random = RANDOM.get();
+        String requestId = randomUuid(random).toString();
+        String otp = sixDigits(random.nextInt(1_000_000));
+        String key = normalize(email);
+        Entry entry = new Entry(key, codeHash(key, requestId, otp), System.currentTimeMillis() + TTL_MILLIS, requestId);
+        byEmail.compute(key, (k, existing) -> {
+            journal.otpIssued(k, entry.codeHash(), entry.requestId(), entry.expiresAtEpochMillis());
+            return entry;
+        });
+        byExpiry.add(entry);
+        issued.increment();
         return new OtpIssue(requestId, otp);
     }
 
     public boolean verify(String email, String otp, String requestId) {
         Entry entry = byEmail.get(normalize(email));
-        if (entry == null) return false;
-        if (Instant.now().isAfter(entry.expiresAt())) {
-            byEmail.remove(normalize(email));
+        if (entry == null) {
+            rejected.increment();
+            return false;
+        }
+        if (System.currentTimeMillis() > entry.expiresAtEpochMillis()) {
+            remove(entry);
+            expired.increment();
             return false;
         }
-        if (!entry.requestId().equals(requestId)) return false;
-        if (!entry.otp().equals(otp)) return false;
-        byEmail.remove(normalize(email));
+        if (!entry.requestId().equals(requestId)
+                || !MessageDigest.isEqual(entry.codeHash(), codeHash(entry.email(), requestId, otp))) {
+            rejected.increment();
+            return false;
+        }
+        // Of concurrent verifies of the same code, only the one that removes the entry logs in.
+        if (!remove(entry)) {
+            rejected.increment();
+            return false;
+        }
+        verified.increment();
         return true;
     }
 
+    public int size() {
+        return byEmail.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("opencore.auth.otp.issued", issued, LongAdder::sum)
+                .description("OTPs issued")
+                .register(registry);
+        FunctionCounter.builder("opencore.auth.otp.verifications", verified, LongAdder::sum)
+                .tag("result", "success")
+                .description("OTP verification attempts")
+                .register(registry);
+        FunctionCounter.builder("opencore.auth.otp.verifications", rejected, LongAdder::sum)
+                .tag("result", "invalid")
+                .description("OTP verification attempts")
+                .register(registry);
+        FunctionCounter.builder("opencore.auth.otp.verifications", expired, LongAdder::sum)
+                .tag("result", "expired")
+                .description("OTP verification attempts")
+                .register(registry);
+        Gauge.builder("opencore.auth.otp.live", byEmail, Map::size)
+                .description("Pending OTPs, including expired ones not yet swept")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    /** Evicts up to budget expired entries in expiry order; returns how many queue entries were drained. */
+    int sweep(int budget) {
+        long now = System.currentTimeMillis();
+        int drained = 0;
+        while (drained < budget) {
+            Entry head = byExpiry.peek();
+            if (head == null || head.expiresAtEpochMillis() >= now) break;
+            byExpiry.poll();
+            // Superseded or verified entries are already gone from the map; this only drops the queue node.
+            byEmail.remove(head.email(), head);
+            drained++;
+        }
+        return drained;
+    }
+
+    void journalTo(StateJournal journal) {
+        this.journal = journal;
+    }
+
+    void restore(String email, byte[] codeHash, String requestId, long expiresAtEpochMillis) {
+        if (expiresAtEpochMillis <= System.currentTimeMillis()) {
+            byEmail.remove(email);
+            return;
+        }
+        Entry entry = new Entry(email, codeHash, expiresAtEpochMillis, requestId);
+        byEmail.put(email, entry);
+        byExpiry.add(entry);
+    }
+
+    void restoreRemoved(String email) {
+        byEmail.remove(email);
+    }
+
+    void forEach(OtpVisitor visitor) {
+        byEmail.forEach((email, e) -> visitor.visit(email, e.codeHash(), e.requestId(), e.expiresAtEpochMillis()));
+    }
+
+    // Only removes the entry that was checked, so a code issued concurrently survives. Returns whether this call
+    // removed it.
+    private boolean remove(Entry entry) {
+        boolean[] removed = new boolean[1];
+        byEmail.computeIfPresent(entry.email(), (k, current) -> {
+            if (current != entry) return current;
+            journal.otpRemoved(k);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    private static String sixDigits(int value) {
+        char[] digits = new char[6];
+        for (int i = 5; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+
+    private static UUID randomUuid(SecureRandom random) {
+        long msb = random.nextLong();
+        long lsb = random.nextLong();
+        msb = (msb & ~0xF000L) | 0x4000L;
+        lsb = (lsb & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    private byte[] codeHash(String email, String requestId, String otp) {
+        Mac mac = macs.get();
+        mac.update(email.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        mac.update(requestId.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(otp == null ? new byte[0] : otp.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
     private static String normalize(String email) {
         return email == null ? "" : email.trim().toLowerCase();
     }
 
-    private record Entry(String otp, Instant expiresAt, String requestId) {}
+    interface OtpVisitor {
+        void visit(String email, byte[] codeHash, String requestId, long expiresAtEpochMillis);
+    }
+
+    private record Entry(String email, byte[] codeHash, long expiresAtEpochMillis, String requestId) {}
 
     public record OtpIssue(String requestId, String otp) {}
 }
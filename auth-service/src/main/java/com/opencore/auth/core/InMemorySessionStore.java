@@ -1,39 +1,464 @@
 package com.opencore.auth.core;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
 
+/**
+ * Refresh-token sessions keyed by jti, held in striped primitive arrays rather than one object per session.
+ *
+ * Each segment keeps its entries in parallel arrays, an open-addressed jti index, a per-user chain (so user-wide
+ * operations touch only that user's sessions) and a hashed timing wheel of expiry buckets. Writes sweep a bounded
+ * number of expired entries, so memory tracks live sessions rather than every session ever issued.
+ */
 public class InMemorySessionStore {
-    private final Map<String, Session> sessionsByRefreshJti = new ConcurrentHashMap<>();
+    private static final int SEGMENTS = 64;
+    private static final int WHEEL_BUCKETS = 4096;
+    private static final int SWEEP_BUDGET_PER_WRITE = 64;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int NIL = -1;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long bucketWidthSeconds;
+    private volatile StateJournal journal = StateJournal.NONE;
+
+    public InMemorySessionStore() {
+        this(Duration.ofDays(30).getSeconds());
+    }
+
+    public InMemorySessionStore(long maxTtlSeconds) {
+        this.bucketWidthSeconds = Math.max(1, (maxTtlSeconds + WHEEL_BUCKETS - 2) / (WHEEL_BUCKETS - 1));
+        long tick = nowEpochSeconds() / bucketWidthSeconds;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(tick);
+        }
+    }
 
     public void put(String refreshJti, Session session) {
-        sessionsByRefreshJti.put(refreshJti, session);
+        UUID jti = UUID.fromString(refreshJti);
+        UUID user = UUID.fromString(session.userId());
+        put(jti.getMostSignificantBits(), jti.getLeastSignificantBits(),
+                user.getMostSignificantBits(), user.getLeastSignificantBits(),
+                session.deviceId(), session.expiresAtEpochSeconds());
     }
 
     public Session get(String refreshJti) {
-        return sessionsByRefreshJti.get(refreshJti);
+        UUID jti = parse(refreshJti);
+        if (jti == null) return null;
+        Segment s = segmentFor(jti);
+        synchronized (s) {
+            int e = s.find(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+            if (e == NIL) return null;
+            return new Session(new UUID(s.userHi[e], s.userLo[e]).toString(), s.device[e], s.expires[e]);
+        }
+    }
+
+    /**
+     * Removes the session. Returns false if it was already gone, which lets callers treat a successful revoke as
+     * exclusive ownership of the session.
+     */
+    public boolean revoke(String refreshJti) {
+        UUID jti = parse(refreshJti);
+        if (jti == null) return false;
+        Segment s = segmentFor(jti);
+        synchronized (s) {
+            s.sweep(nowEpochSeconds(), SWEEP_BUDGET_PER_WRITE);
+            if (!s.remove(jti.getMostSignificantBits(), jti.getLeastSignificantBits())) {
+                return false;
+            }
+            journal.sessionRevoked(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+            return true;
+        }
+    }
+
+    /**
+     * Moves a live session to a new jti with a new expiry, as one step from the caller's point of view: the old entry
+     * is claimed under its segment lock, so of two concurrent rotations of the same jti exactly one gets the session
+     * back and the other gets null. Returns the session as it was before rotation.
+     */
+    public Session rotate(UUID refreshJti, UUID nextJti, long nextExpiresAtEpochSeconds) {
+        Claimed old = claim(refreshJti);
+        if (old == null) return null;
+        put(nextJti.getMostSignificantBits(), nextJti.getLeastSignificantBits(), old.userHi, old.userLo,
+                old.deviceId, nextExpiresAtEpochSeconds);
+        return old.session();
+    }
+
+    /** Removes a live session and returns it, or null if it was missing or already expired. */
+    public Session take(UUID refreshJti) {
+        Claimed old = claim(refreshJti);
+        return old == null ? null : old.session();
+    }
+
+    public int revokeAllForUser(String userId) {
+        UUID user = parse(userId);
+        if (user == null) return 0;
+        int removed = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                int e = s.userHead(user.getMostSignificantBits(), user.getLeastSignificantBits());
+                while (e != NIL) {
+                    int next = s.userNext[e];
+                    // Journaled per session: a user-wide record would also drop sessions added to segments
+                    // that were already visited.
+                    journal.sessionRevoked(s.jtiHi[e], s.jtiLo[e]);
+                    s.unlink(e);
+                    removed++;
+                    e = next;
+                }
+            }
+        }
+        return removed;
+    }
+
+    public List<UserSession> listForUser(String userId) {
+        UUID user = parse(userId);
+        if (user == null) return List.of();
+        long now = nowEpochSeconds();
+        List<UserSession> out = new ArrayList<>();
+        for (Segment s : segments) {
+            synchronized (s) {
+                for (int e = s.userHead(user.getMostSignificantBits(), user.getLeastSignificantBits()); e != NIL; e = s.userNext[e]) {
+                    if (s.expires[e] > now) {
+                        out.add(new UserSession(new UUID(s.jtiHi[e], s.jtiLo[e]).toString(), s.device[e], s.expires[e]));
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    public int evictExpired() {
+        long now = nowEpochSeconds();
+        int evicted = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                evicted += s.sweep(now, Integer.MAX_VALUE);
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                n += s.count;
+            }
+        }
+        return n;
+    }
+
+    void journalTo(StateJournal journal) {
+        this.journal = journal;
+    }
+
+    void forEach(SessionVisitor visitor) {
+        for (Segment s : segments) {
+            synchronized (s) {
+                for (int e = 0; e < s.used; e++) {
+                    if (s.expires[e] != 0) {
+                        visitor.visit(s.jtiHi[e], s.jtiLo[e], s.userHi[e], s.userLo[e], s.device[e], s.expires[e]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void put(long hi, long lo, long userHi, long userLo, String deviceId, long expiresAtEpochSeconds) {
+        long now = nowEpochSeconds();
+        Segment s = segmentFor(hi, lo);
+        synchronized (s) {
+            s.sweep(now, SWEEP_BUDGET_PER_WRITE);
+            if (expiresAtEpochSeconds <= now) {
+                if (s.remove(hi, lo)) {
+                    journal.sessionRevoked(hi, lo);
+                }
+                return;
+            }
+            s.put(hi, lo, userHi, userLo, deviceId, expiresAtEpochSeconds);
+            journal.sessionPut(hi, lo, userHi, userLo, deviceId, expiresAtEpochSeconds);
+        }
+    }
+
+    private Claimed claim(UUID jti) {
+        long hi = jti.getMostSignificantBits();
+        long lo = jti.getLeastSignificantBits();
+        long now = nowEpochSeconds();
+        Segment s = segmentFor(hi, lo);
+        synchronized (s) {
+            s.sweep(now, SWEEP_BUDGET_PER_WRITE);
+            int e = s.find(hi, lo);
+            // An expired entry the sweep hasn't reached yet is left for it.
+            if (e == NIL || s.expires[e] <= now) return null;
+            Claimed claimed = new Claimed(s.userHi[e], s.userLo[e], s.device[e], s.expires[e]);
+            s.unlink(e);
+            journal.sessionRevoked(hi, lo);
+            return claimed;
+        }
+    }
+
+    private Segment segmentFor(UUID jti) {
+        return segmentFor(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+    }
+
+    private Segment segmentFor(long hi, long lo) {
+        return segments[(int) (mix(hi, lo) >>> 58)];
+    }
+
+    private static UUID parse(String value) {
+        if (value == null) return null;
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long nowEpochSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static long mix(long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ (h >>> 33);
     }
 
-    public void revoke(String refreshJti) {
-        Session s = sessionsByRefreshJti.get(refreshJti);
-        if (s != null) {
-            sessionsByRefreshJti.put(refreshJti, s.withRevoked(true));
+    private final class Segment {
+        long[] jtiHi = new long[INITIAL_CAPACITY];
+        long[] jtiLo = new long[INITIAL_CAPACITY];
+        long[] userHi = new long[INITIAL_CAPACITY];
+        long[] userLo = new long[INITIAL_CAPACITY];
+        // Zero marks a free entry.
+        long[] expires = new long[INITIAL_CAPACITY];
+        String[] device = new String[INITIAL_CAPACITY];
+        int[] userNext = new int[INITIAL_CAPACITY];
+        int[] userPrev = new int[INITIAL_CAPACITY];
+        // Doubles as the free list link for unused entries.
+        int[] wheelNext = new int[INITIAL_CAPACITY];
+        int[] wheelPrev = new int[INITIAL_CAPACITY];
+
+        // Open-addressed, linear probing; slots hold entry + 1, 0 is empty.
+        int[] jtiIndex = new int[INITIAL_CAPACITY * 2];
+        int[] userIndex = new int[INITIAL_CAPACITY * 2];
+
+        final int[] wheel = new int[WHEEL_BUCKETS];
+        long sweptTick;
+        int count;
+        int used;
+        int freeHead = NIL;
+
+        Segment(long tick) {
+            Arrays.fill(wheel, NIL);
+            this.sweptTick = tick;
+        }
+
+        int find(long hi, long lo) {
+            int mask = jtiIndex.length - 1;
+            for (int i = (int) mix(hi, lo) & mask; ; i = (i + 1) & mask) {
+                int slot = jtiIndex[i];
+                if (slot == 0) return NIL;
+                int e = slot - 1;
+                if (jtiHi[e] == hi && jtiLo[e] == lo) return e;
+            }
+        }
+
+        int userHead(long hi, long lo) {
+            int i = userSlot(hi, lo);
+            return userIndex[i] == 0 ? NIL : userIndex[i] - 1;
+        }
+
+        void put(long hi, long lo, long uHi, long uLo, String deviceId, long exp) {
+            remove(hi, lo);
+            if (count == jtiHi.length) {
+                grow();
+            }
+            int e = allocate();
+            jtiHi[e] = hi;
+            jtiLo[e] = lo;
+            userHi[e] = uHi;
+            userLo[e] = uLo;
+            device[e] = deviceId;
+            expires[e] = exp;
+
+            int mask = jtiIndex.length - 1;
+            int i = (int) mix(hi, lo) & mask;
+            while (jtiIndex[i] != 0) i = (i + 1) & mask;
+            jtiIndex[i] = e + 1;
+
+            int u = userSlot(uHi, uLo);
+            int head = userIndex[u] - 1;
+            userPrev[e] = NIL;
+            userNext[e] = head;
+            if (head != NIL) userPrev[head] = e;
+            userIndex[u] = e + 1;
+
+            int b = (int) ((exp / bucketWidthSeconds) & (WHEEL_BUCKETS - 1));
+            wheelPrev[e] = NIL;
+            wheelNext[e] = wheel[b];
+            if (wheel[b] != NIL) wheelPrev[wheel[b]] = e;
+            wheel[b] = e;
+            count++;
+        }
+
+        boolean remove(long hi, long lo) {
+            int e = find(hi, lo);
+            if (e == NIL) return false;
+            unlink(e);
+            return true;
+        }
+
+        // Advances the wheel up to the current tick, evicting at most budget entries.
+        int sweep(long now, int budget) {
+            long nowTick = now / bucketWidthSeconds;
+            int evicted = 0;
+            while (sweptTick < nowTick) {
+                int b = (int) (sweptTick & (WHEEL_BUCKETS - 1));
+                int e = wheel[b];
+                while (e != NIL) {
+                    int next = wheelNext[e];
+                    // Entries from a later revolution share the bucket and stay put.
+                    if (expires[e] / bucketWidthSeconds <= sweptTick) {
+                        if (evicted == budget) return evicted;
+                        unlink(e);
+                        evicted++;
+                    }
+                    e = next;
+                }
+                sweptTick++;
+            }
+            return evicted;
+        }
+
+        void unlink(int e) {
+            deleteJtiSlot(e);
+
+            int u = userSlot(userHi[e], userLo[e]);
+            if (userPrev[e] != NIL) {
+                userNext[userPrev[e]] = userNext[e];
+            } else if (userNext[e] != NIL) {
+                userIndex[u] = userNext[e] + 1;
+            } else {
+                deleteUserSlot(u);
+            }
+            if (userNext[e] != NIL) userPrev[userNext[e]] = userPrev[e];
+
+            int b = (int) ((expires[e] / bucketWidthSeconds) & (WHEEL_BUCKETS - 1));
+            if (wheelPrev[e] != NIL) {
+                wheelNext[wheelPrev[e]] = wheelNext[e];
+            } else {
+                wheel[b] = wheelNext[e];
+            }
+            if (wheelNext[e] != NIL) wheelPrev[wheelNext[e]] = wheelPrev[e];
+
+            device[e] = null;
+            expires[e] = 0;
+            wheelNext[e] = freeHead;
+            freeHead = e;
+            count--;
+        }
+
+        private int allocate() {
+            if (freeHead != NIL) {
+                int e = freeHead;
+                freeHead = wheelNext[e];
+                return e;
+            }
+            return used++;
+        }
+
+        private int userSlot(long hi, long lo) {
+            int mask = userIndex.length - 1;
+            for (int i = (int) mix(hi, lo) & mask; ; i = (i + 1) & mask) {
+                int slot = userIndex[i];
+                if (slot == 0) return i;
+                int e = slot - 1;
+                if (userHi[e] == hi && userLo[e] == lo) return i;
+            }
+        }
+
+        private void deleteJtiSlot(int e) {
+            int mask = jtiIndex.length - 1;
+            int i = (int) mix(jtiHi[e], jtiLo[e]) & mask;
+            while (jtiIndex[i] != e + 1) i = (i + 1) & mask;
+            jtiIndex[i] = 0;
+            for (int j = (i + 1) & mask; jtiIndex[j] != 0; j = (j + 1) & mask) {
+                int other = jtiIndex[j] - 1;
+                int home = (int) mix(jtiHi[other], jtiLo[other]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    jtiIndex[i] = jtiIndex[j];
+                    jtiIndex[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        private void deleteUserSlot(int i) {
+            int mask = userIndex.length - 1;
+            userIndex[i] = 0;
+            for (int j = (i + 1) & mask; userIndex[j] != 0; j = (j + 1) & mask) {
+                int other = userIndex[j] - 1;
+                int home = (int) mix(userHi[other], userLo[other]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    userIndex[i] = userIndex[j];
+                    userIndex[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        private void grow() {
+            int cap = jtiHi.length * 2;
+            jtiHi = Arrays.copyOf(jtiHi, cap);
+            jtiLo = Arrays.copyOf(jtiLo, cap);
+            userHi = Arrays.copyOf(userHi, cap);
+            userLo = Arrays.copyOf(userLo, cap);
+            expires = Arrays.copyOf(expires, cap);
+            device = Arrays.copyOf(device, cap);
+            userNext = Arrays.copyOf(userNext, cap);
+            userPrev = Arrays.copyOf(userPrev, cap);
+            wheelNext = Arrays.copyOf(wheelNext, cap);
+            wheelPrev = Arrays.copyOf(wheelPrev, cap);
+
+            // Entries are dense when full, so both indexes can be rebuilt from [0, used).
+            jtiIndex = new int[cap * 2];
+            userIndex = new int[cap * 2];
+            int mask = jtiIndex.length - 1;
+            for (int e = 0; e < used; e++) {
+                int i = (int) mix(jtiHi[e], jtiLo[e]) & mask;
+                while (jtiIndex[i] != 0) i = (i + 1) & mask;
+                jtiIndex[i] = e + 1;
+                if (userPrev[e] == NIL) {
+                    userIndex[userSlot(userHi[e], userLo[e])] = e + 1;
+                }
+            }
         }
     }
 
     public record Session(
             String userId,
             String deviceId,
-            long expiresAtEpochSeconds,
-            boolean revoked
+            long expiresAtEpochSeconds
     ) {
         public boolean isExpired() {
             return Instant.now().getEpochSecond() >= expiresAtEpochSeconds;
         }
+    }
 
-        public Session withRevoked(boolean value) {
-            return new Session(userId, deviceId, expiresAtEpochSeconds, value);
+    interface SessionVisitor {
+        void visit(long jtiHi, long jtiLo, long userHi, long userLo, String deviceId, long expiresAtEpochSeconds);
+    }
+
+    private record Claimed(long userHi, long userLo, String deviceId, long expiresAtEpochSeconds) {
+        Session session() {
+            return new Session(new UUID(userHi, userLo).toString(), deviceId, expiresAtEpochSeconds);
         }
     }
+
+    public record UserSession(String refreshJti, String deviceId, long expiresAtEpochSeconds) {}
 }
@@ -1,77 +1,45 @@
 package com.opencore.auth.core;
 
-import io.jsonwebtoken.Jwts;
+import com.opencore.token.JwtCodec;
 import io.jsonwebtoken.security.Keys;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.util.Date;
-import java.util.Map;
 import java.util.UUID;
 
 public class JwtService {
     private final OpenCoreJwtProperties props;
-    private final SecretKey key;
+    private final JwtCodec codec;
 
     public JwtService(OpenCoreJwtProperties props) {
         this.props = props;
-        this.key = Keys.hmacShaKeyFor(props.secret().getBytes(StandardCharsets.UTF_8));
+        SecretKey key = Keys.hmacShaKeyFor(props.secret().getBytes(StandardCharsets.UTF_8));
+        this.codec = new JwtCodec(props.issuer(), key);
     }
 
     public String issueAccessToken(String userId, String role) {
-        Instant now = Instant.now();
-        Instant exp = now.plusSeconds(props.accessTtlSeconds());
-        return Jwts.builder()
-                .issuer(props.issuer())
-                .subject(userId)
-                .issuedAt(Date.from(now))
-                .expiration(Date.from(exp))
-                .claims(Map.of(
-                        "typ", "access",
-                        "role", role
-                ))
-                .signWith(key)
-                .compact();
+        long now = System.currentTimeMillis() / 1000;
+        return codec.encodeAccess(userId, UUID.randomUUID().toString(), role, now, now + props.accessTtlSeconds());
     }
 
     public IssuedRefreshToken issueRefreshToken(String userId, String deviceId) {
-        Instant now = Instant.now();
-        Instant exp = now.plusSeconds(props.refreshTtlSeconds());
+        long now = System.currentTimeMillis() / 1000;
+        long exp = now + props.refreshTtlSeconds();
         String jti = UUID.randomUUID().toString();
+        return new IssuedRefreshToken(encodeRefreshToken(userId, jti, deviceId, exp), jti, exp);
+    }
 
-        String token = Jwts.builder()
-                .issuer(props.issuer())
-                .subject(userId)
-                .id(jti)
-                .issuedAt(Date.from(now))
-                .expiration(Date.from(exp))
-                .claims(Map.of(
-                        "typ", "refresh",
-                        "deviceId", deviceId == null ? "" : deviceId
-                ))
-                .signWith(key)
-                .compact();
-
-        return new IssuedRefreshToken(token, jti, exp.getEpochSecond());
+    public String encodeRefreshToken(String userId, String jti, String deviceId, long expEpochSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        return codec.encodeRefresh(userId, jti, deviceId == null ? "" : deviceId, now, expEpochSeconds);
     }
 
     public ParsedToken parseAndVerify(String jwt) {
-        var claims = Jwts.parser()
-                .verifyWith(key)
-                .requireIssuer(props.issuer())
-                .build()
-                .parseSignedClaims(jwt)
-                .getPayload();
-
-        String typ = claims.get("typ", String.class);
-        String sub = claims.getSubject();
-        String jti = claims.getId();
-        long exp = claims.getExpiration().toInstant().getEpochSecond();
-        return new ParsedToken(typ, sub, jti, exp);
+        var claims = codec.decode(jwt, System.currentTimeMillis());
+        return new ParsedToken(claims.typ(), claims.subject(), claims.jti(), claims.role(), claims.expEpochSeconds());
     }
 
     public record IssuedRefreshToken(String token, String jti, long expEpochSeconds) {}
 
-    public record ParsedToken(String typ, String subject, String jti, long expEpochSeconds) {}
+    public record ParsedToken(String typ, String subject, String jti, String role, long expEpochSeconds) {}
 }
@@ -0,0 +1,109 @@
+package com.opencore.auth.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of preallocated, memory-mapped segment files.
+ *
+ * Appends are a copy into the mapping, so a record survives a process exit as soon as the call returns. Forcing the
+ * pages to the device is group-committed by {@link #flush()}, which the owner calls on a short interval.
+ */
+final class MappedStateJournal extends StateRecords.Writer implements Closeable {
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private long sequence;
+    private MappedByteBuffer current;
+    private boolean dirty;
+
+    MappedStateJournal(Path directory, long firstSequence, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.sequence = firstSequence;
+        this.current = map(firstSequence, segmentBytes);
+    }
+
+    @Override
+    protected void writeFrame(byte[] payload, int length, int crc) {
+        // Keep room for a zero length marker so readers always find the end of the segment.
+        int needed = StateRecords.FRAME_HEADER_BYTES + length + 4;
+        if (current.remaining() < needed) {
+            rollTo(sequence + 1, Math.max(segmentBytes, needed));
+        }
+        current.putInt(length).putInt(crc).put(payload, 0, length);
+        dirty = true;
+    }
+
+    /** Starts a new segment and returns its sequence; records written before the call are in earlier segments. */
+    synchronized long roll() {
+        rollTo(sequence + 1, segmentBytes);
+        return sequence;
+    }
+
+    void flush() {
+        MappedByteBuffer toForce;
+        synchronized (this) {
+            if (!dirty) return;
+            dirty = false;
+            toForce = current;
+        }
+        toForce.force();
+    }
+
+    void deleteSegmentsBefore(long keepFrom) throws IOException {
+        for (Segment s : segments(directory)) {
+            if (s.sequence() < keepFrom) {
+                Files.deleteIfExists(s.path());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        current.force();
+    }
+
+    static List<Segment> segments(Path directory) throws IOException {
+        List<Segment> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(p -> {
+                String name = p.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    out.add(new Segment(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), p));
+                }
+            });
+        }
+        out.sort((a, b) -> Long.compare(a.sequence(), b.sequence()));
+        return out;
+    }
+
+    private void rollTo(long nextSequence, long size) {
+        current.force();
+        current = map(nextSequence, size);
+        sequence = nextSequence;
+        dirty = false;
+    }
+
+    private MappedByteBuffer map(long seq, long size) {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, seq, SUFFIX));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to create journal segment " + file, e);
+        }
+    }
+
+    record Segment(long sequence, Path path) {}
+}
@@ -0,0 +1,13 @@
+package com.opencore.auth.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "opencore.bruteforce")
+public record OpenCoreBruteForceProperties(
+        long windowSeconds,
+        int maxFailuresPerEmailAndIp,
+        int maxFailuresPerEmail,
+        int maxFailuresPerIp,
+        int maxKeys,
+        long sweepIntervalSeconds
+) {}
@@ -0,0 +1,16 @@
+package com.opencore.auth.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+
+@ConfigurationProperties(prefix = "opencore.client-ip")
+public record OpenCoreClientIpProperties(
+        List<String> trustedProxies
+) {
+    public OpenCoreClientIpProperties {
+        trustedProxies = trustedProxies == null
+                ? List.of()
+                : trustedProxies.stream().map(String::trim).filter(p -> !p.isEmpty()).toList();
+    }
+}
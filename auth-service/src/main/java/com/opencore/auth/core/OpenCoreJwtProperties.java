@@ -7,5 +7,16 @@ public record OpenCoreJwtProperties(
         String issuer,
         String secret,
         long accessTtlSeconds,
-        long refreshTtlSeconds
-) {}
+        long refreshTtlSeconds,
+        RefreshTokenFormat refreshTokenFormat
+) {
+    public OpenCoreJwtProperties {
+        if (refreshTokenFormat == null) refreshTokenFormat = RefreshTokenFormat.JWT;
+    }
+
+    /** What new refresh tokens look like. Either kind is accepted on refresh and revoke, whatever the setting. */
+    public enum RefreshTokenFormat {
+        JWT,
+        OPAQUE
+    }
+}
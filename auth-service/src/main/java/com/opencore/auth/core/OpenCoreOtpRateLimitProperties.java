@@ -0,0 +1,12 @@
+package com.opencore.auth.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "opencore.otp-rate-limit")
+public record OpenCoreOtpRateLimitProperties(
+        int emailBurst,
+        double emailPerMinute,
+        int ipBurst,
+        double ipPerMinute,
+        int maxKeys
+) {}
@@ -0,0 +1,12 @@
+package com.opencore.auth.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "opencore.state")
+public record OpenCoreStateProperties(
+        boolean persistent,
+        String directory,
+        long journalSegmentBytes,
+        long flushIntervalMillis,
+        long snapshotIntervalSeconds
+) {}
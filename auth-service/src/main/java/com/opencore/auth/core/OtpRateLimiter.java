@@ -0,0 +1,173 @@
+package com.opencore.auth.core;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets limiting OTP issuance per IP and per email.
+ *
+ * Each dimension is a fixed-size, sharded open-addressing table of (key hash, packed bucket) longs. Taking a token
+ * is a CAS on the packed bucket; only claiming a slot for a new key takes the shard lock. A bucket that has refilled
+ * to its burst size carries no information, so its slot is simply reused, and the table never needs sweeping.
+ * An IP burst of 0 turns the per-IP bucket off.
+ */
+public class OtpRateLimiter implements MeterBinder {
+    private static final String[] DIMENSION_NAMES = {"ip", "email"};
+    private static final int SHARDS = 16;
+    private static final int MAX_PROBE = 16;
+    // Buckets hold tokens in 1/1024ths in the low bits and the last update (millis since construction) above them.
+    private static final int TOKEN_BITS = 22;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long UNIT = 1024;
+    private static final int MAX_BURST = (int) (TOKEN_MASK / UNIT);
+
+    private final long seed;
+    private final long baseMillis = System.currentTimeMillis();
+    private final Dimension ip;
+    private final Dimension email;
+
+    public OtpRateLimiter(OpenCoreOtpRateLimitProperties props, long seed) {
+        this.seed = seed;
+        this.ip = props.ipBurst() > 0 ? new Dimension(0, props.ipBurst(), props.ipPerMinute(), props.maxKeys()) : null;
+        this.email = new Dimension(1, props.emailBurst(), props.emailPerMinute(), props.maxKeys());
+    }
+
+    /** Takes one token from both buckets; returns 0 if granted, otherwise how many millis until a retry could be. */
+    public long tryAcquire(String email, String ip) {
+        long now = System.currentTimeMillis() - baseMillis;
+        // IP first: a client hammering one address shouldn't also drain the victim's email bucket.
+        if (this.ip != null) {
+            long wait = this.ip.acquire(hash(ip), now);
+            if (wait > 0) return wait;
+        }
+        return this.email.acquire(hash(email), now);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Dimension d : new Dimension[] {ip, email}) {
+            if (d == null) continue;
+            String name = DIMENSION_NAMES[d.id];
+            FunctionCounter.builder("opencore.auth.otp.ratelimit.rejected", d.rejected, LongAdder::sum)
+                    .tag("dimension", name)
+                    .description("OTP requests refused because a token bucket was empty")
+                    .register(registry);
+            FunctionCounter.builder("opencore.auth.otp.ratelimit.evictions", d.evictions, LongAdder::sum)
+                    .tag("dimension", name)
+                    .description("Partially drained buckets evicted because their probe window was full")
+                    .register(registry);
+        }
+    }
+
+    // Keyed by a secret seed so clients can't craft keys that collide into one probe window.
+    private long hash(String s) {
+        long h = seed;
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001B3L;
+            }
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private static final class Dimension {
+        final int id;
+        final long burst;
+        final double unitsPerMilli;
+        final AtomicLongArray[] shards = new AtomicLongArray[SHARDS];
+        final int mask;
+        final LongAdder rejected = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+
+        Dimension(int id, int burst, double perMinute, int maxKeys) {
+            if (burst < 1 || burst > MAX_BURST) {
+                throw new IllegalArgumentException("OTP rate limit burst must be between 1 and " + MAX_BURST);
+            }
+            this.id = id;
+            this.burst = burst * UNIT;
+            this.unitsPerMilli = perMinute * UNIT / 60_000;
+            int perShard = Integer.highestOneBit(Math.max(MAX_PROBE, maxKeys / SHARDS));
+            for (int i = 0; i < SHARDS; i++) {
+                shards[i] = new AtomicLongArray(perShard * 2);
+            }
+            this.mask = perShard - 1;
+        }
+
+        long acquire(long h, long now) {
+            AtomicLongArray t = shards[(int) (h >>> 60)];
+            while (true) {
+                int i = find(t, h);
+                if (i < 0) i = claim(t, h, now);
+                long state = t.get(2 * i + 1);
+                // The slot may have been handed to another key since the probe; start over if so.
+                if (t.get(2 * i) != h) continue;
+                long available = available(state, now);
+                if (available < UNIT) {
+                    rejected.increment();
+                    return Math.max(1, (long) Math.ceil((UNIT - available) / unitsPerMilli));
+                }
+                long updated = Math.max(now, state >>> TOKEN_BITS) << TOKEN_BITS | (available - UNIT);
+                if (t.compareAndSet(2 * i + 1, state, updated)) return 0;
+            }
+        }
+
+        private long available(long state, long now) {
+            long elapsed = Math.max(0, now - (state >>> TOKEN_BITS));
+            double refilled = (state & TOKEN_MASK) + elapsed * unitsPerMilli;
+            return refilled >= burst ? burst : (long) refilled;
+        }
+
+        private int find(AtomicLongArray t, long h) {
+            int i = (int) h & mask;
+            for (int p = 0; p < MAX_PROBE; p++, i = (i + 1) & mask) {
+                long k = t.get(2 * i);
+                if (k == h) return i;
+                if (k == 0) return -1;
+            }
+            return -1;
+        }
+
+        // Gives h a full bucket in a free slot or one whose bucket has refilled; failing that, evicts the fullest
+        // bucket so the keys closest to their limit are the last to be forgotten.
+        private int claim(AtomicLongArray t, long h, long now) {
+            synchronized (t) {
+                int i = (int) h & mask;
+                int reusable = -1;
+                int victim = -1;
+                long victimAvailable = -1;
+                for (int p = 0; p < MAX_PROBE; p++, i = (i + 1) & mask) {
+                    long k = t.get(2 * i);
+                    if (k == h) return i;
+                    if (k == 0) {
+                        if (reusable < 0) reusable = i;
+                        break;
+                    }
+                    long available = available(t.get(2 * i + 1), now);
+                    if (available >= burst) {
+                        if (reusable < 0) reusable = i;
+                    } else if (available > victimAvailable) {
+                        victim = i;
+                        victimAvailable = available;
+                    }
+                }
+                if (reusable < 0) {
+                    reusable = victim;
+                    evictions.increment();
+                }
+                // State before key: a reader that sees the new key also sees its fresh bucket.
+                t.set(2 * reusable + 1, now << TOKEN_BITS | burst);
+                t.set(2 * reusable, h);
+                return reusable;
+            }
+        }
+    }
+}
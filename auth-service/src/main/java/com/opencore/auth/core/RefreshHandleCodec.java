@@ -0,0 +1,110 @@
+package com.opencore.auth.core;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque refresh-token handles: base64url of a random 16-byte session id followed by a truncated HMAC of it.
+ *
+ * The handle carries nothing but the id, since the session record holds the user, device and expiry. The MAC lets
+ * forged or mistyped handles be rejected without touching the session store. Handles never contain a '.', which is
+ * how they are told apart from JWT refresh tokens.
+ */
+final class RefreshHandleCodec {
+    private static final int ID_BYTES = 16;
+    private static final int MAC_BYTES = 8;
+    static final int ENCODED_LENGTH = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(RefreshHandleCodec::newRandom);
+
+    private final ThreadLocal<Mac> mac;
+
+    RefreshHandleCodec(String secret) {
+        SecretKeySpec key = new SecretKeySpec(("refresh-handle:" + secret).getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac m = Mac.getInstance("HmacSHA256");
+                m.init(key);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /** A fresh random id with version 4 bits, so it prints like any other session jti. */
+    static UUID newId() {
+        SecureRandom random = RANDOM.get();
+        long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    String encode(UUID id) {
+        byte[] raw = new byte[ID_BYTES + MAC_BYTES];
+        putLong(raw, 0, id.getMostSignificantBits());
+        putLong(raw, 8, id.getLeastSignificantBits());
+        byte[] tag = tag(raw);
+        System.arraycopy(tag, 0, raw, ID_BYTES, MAC_BYTES);
+        return ENCODER.encodeToString(raw);
+    }
+
+    /** The session id behind a handle, or null if it isn't one of ours. */
+    UUID decode(String handle) {
+        if (handle == null || handle.length() != ENCODED_LENGTH) return null;
+        byte[] raw;
+        try {
+            raw = DECODER.decode(handle);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        byte[] tag = tag(raw);
+        int diff = 0;
+        for (int i = 0; i < MAC_BYTES; i++) {
+            diff |= tag[i] ^ raw[ID_BYTES + i];
+        }
+        if (diff != 0) return null;
+        return new UUID(getLong(raw, 0), getLong(raw, 8));
+    }
+
+    static boolean looksLikeHandle(String token) {
+        return token.length() == ENCODED_LENGTH && token.indexOf('.') < 0;
+    }
+
+    private byte[] tag(byte[] raw) {
+        Mac m = mac.get();
+        m.update(raw, 0, ID_BYTES);
+        return m.doFinal();
+    }
+
+    private static void putLong(byte[] b, int off, long v) {
+        for (int i = 7; i >= 0; i--) {
+            b[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[off + i] & 0xFF);
+        }
+        return v;
+    }
+
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.opencore.auth.core;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/** A 429 that tells the client, via Retry-After, how many seconds to wait. */
+public class RetryAfterException extends ResponseStatusException {
+    private final long retryAfterSeconds;
+
+    public RetryAfterException(String reason, long retryAfterMillis) {
+        super(HttpStatus.TOO_MANY_REQUESTS, reason);
+        this.retryAfterSeconds = Math.max(1, (retryAfterMillis + 999) / 1000);
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return headers;
+    }
+}
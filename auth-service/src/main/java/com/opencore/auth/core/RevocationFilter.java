@@ -0,0 +1,294 @@
+package com.opencore.auth.core;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token ids revoked before their expiry, kept until that expiry so any replica can reject them without a round trip.
+ *
+ * Entries are (jti hi, jti lo, exp) triples in striped open-addressed tables, each fronted by a small blocked Bloom
+ * filter. Lookups are lock-free: writers publish the key last, and entries are never moved in place. Expired entries stay in the table (they no longer match)
+ * until a segment is rebuilt, which happens when it fills up or when the sweeper finds it mostly expired.
+ */
+public class RevocationFilter implements MeterBinder, AutoCloseable {
+    private static final int SEGMENTS = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_LOAD_PERCENT = 50;
+    private static final int SLOT_LONGS = 3;
+    private static final int BLOOM_BITS = 4;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final ScheduledExecutorService sweeper;
+    private volatile StateJournal journal = StateJournal.NONE;
+    private volatile RevocationPublisher publisher = RevocationPublisher.NONE;
+
+    public RevocationFilter() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "auth-revocation-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 60, 60, TimeUnit.SECONDS);
+    }
+
+    /** Revokes a token issued by this replica and announces it to the others. */
+    public void revoke(String jti, long expEpochSeconds) {
+        UUID id = parse(jti);
+        if (id != null) revoke(id.getMostSignificantBits(), id.getLeastSignificantBits(), expEpochSeconds);
+    }
+
+    public void revoke(long jtiHi, long jtiLo, long expEpochSeconds) {
+        if (expEpochSeconds <= nowEpochSeconds()) return;
+        if (add(jtiHi, jtiLo, expEpochSeconds)) {
+            publisher.revoked(jtiHi, jtiLo, expEpochSeconds);
+        }
+    }
+
+    /** Applies a revocation announced by another replica (or by this one, echoed back). */
+    public void apply(long jtiHi, long jtiLo, long expEpochSeconds) {
+        if (expEpochSeconds > nowEpochSeconds()) {
+            add(jtiHi, jtiLo, expEpochSeconds);
+        }
+    }
+
+    public boolean isRevoked(String jti) {
+        UUID id = parse(jti);
+        return id != null && isRevoked(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    public boolean isRevoked(long jtiHi, long jtiLo) {
+        return segmentFor(jtiHi, jtiLo).contains(jtiHi, jtiLo);
+    }
+
+    public void publishTo(RevocationPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment s : segments) n += s.used;
+        return n;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("opencore.auth.revocations.entries", this, RevocationFilter::size)
+                .description("Revoked token ids held, including expired ones not yet swept")
+                .register(registry);
+        Gauge.builder("opencore.auth.revocations.bytes", this, RevocationFilter::tableBytes)
+                .description("Memory held by the revocation tables")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    void journalTo(StateJournal journal) {
+        this.journal = journal;
+    }
+
+    void forEach(RevocationVisitor visitor) {
+        long now = nowEpochSeconds();
+        for (Segment s : segments) {
+            synchronized (s) {
+                AtomicLongArray t = s.table.slots;
+                for (int i = 0; i < t.length(); i += SLOT_LONGS) {
+                    long exp = t.get(i + 2);
+                    if (exp > now) visitor.visit(t.get(i), t.get(i + 1), exp);
+                }
+            }
+        }
+    }
+
+    void sweep() {
+        long now = nowEpochSeconds();
+        for (Segment s : segments) {
+            synchronized (s) {
+                if (s.used > INITIAL_CAPACITY / 4 && s.live(now) * 2 < s.used) {
+                    s.rebuild(now);
+                }
+            }
+        }
+    }
+
+    private boolean add(long hi, long lo, long exp) {
+        Segment s = segmentFor(hi, lo);
+        synchronized (s) {
+            if (!s.put(hi, lo, exp)) return false;
+            journal.tokenRevoked(hi, lo, exp);
+            return true;
+        }
+    }
+
+    private double tableBytes() {
+        long n = 0;
+        for (Segment s : segments) n += s.table.bytes();
+        return n;
+    }
+
+    private Segment segmentFor(long hi, long lo) {
+        return segments[(int) (mix(hi, lo) >>> 60)];
+    }
+
+    private static UUID parse(String value) {
+        if (value == null) return null;
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long nowEpochSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static long mix(long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ (h >>> 33);
+    }
+
+    interface RevocationVisitor {
+        void visit(long jtiHi, long jtiLo, long expEpochSeconds);
+    }
+
+    private static final class Table {
+        // (hi, lo, exp) per slot; hi == 0 && lo == 0 is an empty slot.
+        final AtomicLongArray slots;
+        // One 64-bit word per key with BLOOM_BITS bits set, one byte per slot. Lets most lookups for tokens that were
+        // never revoked stop after touching a single, mostly cache-resident word.
+        final AtomicLongArray bloom;
+        final int mask;
+
+        Table(int capacity) {
+            this.slots = new AtomicLongArray(capacity * SLOT_LONGS);
+            this.bloom = new AtomicLongArray(Math.max(1, capacity / 8));
+            this.mask = capacity - 1;
+        }
+
+        boolean mightContain(long h) {
+            long bits = bloomBits(h);
+            return (bloom.get(bloomWord(h)) & bits) == bits;
+        }
+
+        void addToBloom(long h) {
+            long bits = bloomBits(h);
+            bloom.getAndAccumulate(bloomWord(h), bits, (a, b) -> a | b);
+        }
+
+        private int bloomWord(long h) {
+            return (int) ((h >>> 32) % bloom.length());
+        }
+
+        private static long bloomBits(long h) {
+            long bits = 0;
+            for (int i = 0; i < BLOOM_BITS; i++) {
+                bits |= 1L << (h >>> (6 * i + 4));
+            }
+            return bits;
+        }
+
+        long bytes() {
+            return (long) (slots.length() + bloom.length()) * Long.BYTES;
+        }
+    }
+
+    private static final class Segment {
+        // Replaced wholesale on rebuild.
+        volatile Table table = new Table(INITIAL_CAPACITY);
+        // Occupied slots, expired or not. Guarded by the segment lock.
+        volatile int used;
+
+        boolean contains(long hi, long lo) {
+            long h = mix(hi, lo);
+            Table t = table;
+            if (!t.mightContain(h)) return false;
+            AtomicLongArray slots = t.slots;
+            for (int i = (int) h & t.mask; ; i = (i + 1) & t.mask) {
+                int base = i * SLOT_LONGS;
+                long sh = slots.get(base);
+                long sl = slots.get(base + 1);
+                if (sh == hi && sl == lo) return slots.get(base + 2) > nowEpochSeconds();
+                if (sh == 0 && sl == 0) return false;
+            }
+        }
+
+        // Returns false if the jti was already revoked at least until exp.
+        boolean put(long hi, long lo, long exp) {
+            if ((used + 1) * 100L > (table.mask + 1) * (long) MAX_LOAD_PERCENT) {
+                rebuild(nowEpochSeconds());
+            }
+            long h = mix(hi, lo);
+            Table t = table;
+            AtomicLongArray slots = t.slots;
+            for (int i = (int) h & t.mask; ; i = (i + 1) & t.mask) {
+                int base = i * SLOT_LONGS;
+                long sh = slots.get(base);
+                long sl = slots.get(base + 1);
+                if (sh == hi && sl == lo) {
+                    if (slots.get(base + 2) >= exp) return false;
+                    slots.set(base + 2, exp);
+                    return true;
+                }
+                if (sh == 0 && sl == 0) {
+                    // The key is written last so a concurrent reader that matches it also sees exp.
+                    t.addToBloom(h);
+                    slots.set(base + 2, exp);
+                    slots.set(base + 1, lo);
+                    slots.set(base, hi);
+                    used++;
+                    return true;
+                }
+            }
+        }
+
+        int live(long now) {
+            AtomicLongArray slots = table.slots;
+            int n = 0;
+            for (int i = 2; i < slots.length(); i += SLOT_LONGS) {
+                if (slots.get(i) > now) n++;
+            }
+            return n;
+        }
+
+        // Copies live entries into a fresh table sized for them; readers keep using the old table until the swap.
+        void rebuild(long now) {
+            AtomicLongArray old = table.slots;
+            int live = live(now);
+            int capacity = INITIAL_CAPACITY;
+            while ((live + 1) * 100L > capacity * (long) MAX_LOAD_PERCENT / 2) capacity <<= 1;
+            Table next = new Table(capacity);
+            for (int j = 0; j < old.length(); j += SLOT_LONGS) {
+                long exp = old.get(j + 2);
+                if (exp <= now) continue;
+                long hi = old.get(j);
+                long lo = old.get(j + 1);
+                long h = mix(hi, lo);
+                int i = (int) h & next.mask;
+                while (next.slots.get(i * SLOT_LONGS) != 0 || next.slots.get(i * SLOT_LONGS + 1) != 0) {
+                    i = (i + 1) & next.mask;
+                }
+                next.slots.set(i * SLOT_LONGS, hi);
+                next.slots.set(i * SLOT_LONGS + 1, lo);
+                next.slots.set(i * SLOT_LONGS + 2, exp);
+                next.addToBloom(h);
+            }
+            used = live;
+            table = next;
+        }
+    }
+}
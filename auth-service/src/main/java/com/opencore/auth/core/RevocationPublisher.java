@@ -0,0 +1,8 @@
+package com.opencore.auth.core;
+
+/** Announces revocations made on this replica so the other replicas can apply them. */
+public interface RevocationPublisher {
+    RevocationPublisher NONE = (jtiHi, jtiLo, expEpochSeconds) -> {};
+
+    void revoked(long jtiHi, long jtiLo, long expEpochSeconds);
+}
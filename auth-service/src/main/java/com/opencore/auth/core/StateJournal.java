@@ -0,0 +1,23 @@
+package com.opencore.auth.core;
+
+/**
+ * Receives every mutation of auth-service's in-memory state. Stores call it while holding the lock that orders the
+ * mutation, so the journal sees changes to the same key in the order they were applied.
+ */
+interface StateJournal {
+    StateJournal NONE = new StateJournal() {};
+
+    default void sessionPut(long jtiHi, long jtiLo, long userHi, long userLo, String deviceId, long expiresAtEpochSeconds) {}
+
+    default void sessionRevoked(long jtiHi, long jtiLo) {}
+
+    default void otpIssued(String email, byte[] codeHash, String requestId, long expiresAtEpochMillis) {}
+
+    default void otpRemoved(String email) {}
+
+    default void failuresUpdated(byte dimension, long keyHash, long state) {}
+
+    default void failuresCleared(byte dimension, long keyHash) {}
+
+    default void tokenRevoked(long jtiHi, long jtiLo, long expEpochSeconds) {}
+}
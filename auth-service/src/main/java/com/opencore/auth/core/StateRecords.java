@@ -0,0 +1,180 @@
+package com.opencore.auth.core;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary record format shared by the journal segments and snapshots.
+ *
+ * Each record is framed as [int payload length][int crc32c][payload], where the payload starts with a type byte.
+ * A zero length (the fill of a preallocated segment) or a checksum mismatch (a torn write) ends a stream.
+ */
+final class StateRecords {
+    private static final byte SESSION_PUT = 1;
+    private static final byte SESSION_REVOKED = 2;
+    private static final byte OTP_ISSUED = 3;
+    private static final byte OTP_REMOVED = 4;
+    private static final byte FAILURES_UPDATED = 5;
+    private static final byte FAILURES_CLEARED = 6;
+    private static final byte TOKEN_REVOKED = 7;
+
+    static final int FRAME_HEADER_BYTES = 8;
+
+    private StateRecords() {}
+
+    /** Reads records until the end of the stream and applies them to target; returns the number applied. */
+    static long replay(DataInputStream in, StateJournal target) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer payload = ByteBuffer.allocate(256);
+        long applied = 0;
+        while (true) {
+            int len;
+            int expectedCrc;
+            try {
+                len = in.readInt();
+                if (len <= 0) return applied;
+                expectedCrc = in.readInt();
+                if (payload.capacity() < len) payload = ByteBuffer.allocate(len);
+                in.readFully(payload.array(), 0, len);
+            } catch (EOFException e) {
+                return applied;
+            }
+            crc.reset();
+            crc.update(payload.array(), 0, len);
+            if ((int) crc.getValue() != expectedCrc) return applied;
+
+            payload.clear().limit(len);
+            apply(payload, target);
+            applied++;
+        }
+    }
+
+    private static void apply(ByteBuffer p, StateJournal target) {
+        byte type = p.get();
+        switch (type) {
+            case SESSION_PUT -> target.sessionPut(p.getLong(), p.getLong(), p.getLong(), p.getLong(), getString(p), p.getLong());
+            case SESSION_REVOKED -> target.sessionRevoked(p.getLong(), p.getLong());
+            case OTP_ISSUED -> target.otpIssued(getString(p), getBytes(p), getString(p), p.getLong());
+            case OTP_REMOVED -> target.otpRemoved(getString(p));
+            case FAILURES_UPDATED -> target.failuresUpdated(p.get(), p.getLong(), p.getLong());
+            case FAILURES_CLEARED -> target.failuresCleared(p.get(), p.getLong());
+            case TOKEN_REVOKED -> target.tokenRevoked(p.getLong(), p.getLong(), p.getLong());
+            default -> throw new IllegalStateException("unknown state record type " + type);
+        }
+    }
+
+    private static String getString(ByteBuffer p) {
+        int len = p.getInt();
+        if (len < 0) return null;
+        String s = new String(p.array(), p.position(), len, StandardCharsets.UTF_8);
+        p.position(p.position() + len);
+        return s;
+    }
+
+    private static byte[] getBytes(ByteBuffer p) {
+        byte[] bytes = new byte[p.getInt()];
+        p.get(bytes);
+        return bytes;
+    }
+
+    /** Encodes mutations into framed records; subclasses decide where the frames go. */
+    abstract static class Writer implements StateJournal {
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer scratch = ByteBuffer.allocate(256);
+
+        protected abstract void writeFrame(byte[] payload, int length, int crc);
+
+        @Override
+        public synchronized void sessionPut(long jtiHi, long jtiLo, long userHi, long userLo, String deviceId, long expiresAtEpochSeconds) {
+            begin(SESSION_PUT, 41);
+            scratch.putLong(jtiHi).putLong(jtiLo).putLong(userHi).putLong(userLo);
+            putString(deviceId);
+            ensure(8);
+            scratch.putLong(expiresAtEpochSeconds);
+            end();
+        }
+
+        @Override
+        public synchronized void sessionRevoked(long jtiHi, long jtiLo) {
+            begin(SESSION_REVOKED, 17);
+            scratch.putLong(jtiHi).putLong(jtiLo);
+            end();
+        }
+
+        @Override
+        public synchronized void otpIssued(String email, byte[] codeHash, String requestId, long expiresAtEpochMillis) {
+            begin(OTP_ISSUED, 1);
+            putString(email);
+            ensure(4 + codeHash.length);
+            scratch.putInt(codeHash.length).put(codeHash);
+            putString(requestId);
+            ensure(8);
+            scratch.putLong(expiresAtEpochMillis);
+            end();
+        }
+
+        @Override
+        public synchronized void otpRemoved(String email) {
+            begin(OTP_REMOVED, 1);
+            putString(email);
+            end();
+        }
+
+        @Override
+        public synchronized void failuresUpdated(byte dimension, long keyHash, long state) {
+            begin(FAILURES_UPDATED, 18);
+            scratch.put(dimension).putLong(keyHash).putLong(state);
+            end();
+        }
+
+        @Override
+        public synchronized void failuresCleared(byte dimension, long keyHash) {
+            begin(FAILURES_CLEARED, 10);
+            scratch.put(dimension).putLong(keyHash);
+            end();
+        }
+
+        @Override
+        public synchronized void tokenRevoked(long jtiHi, long jtiLo, long expEpochSeconds) {
+            begin(TOKEN_REVOKED, 25);
+            scratch.putLong(jtiHi).putLong(jtiLo).putLong(expEpochSeconds);
+            end();
+        }
+
+        private void begin(byte type, int size) {
+            scratch.clear();
+            ensure(size);
+            scratch.put(type);
+        }
+
+        private void putString(String s) {
+            if (s == null) {
+                ensure(4);
+                scratch.putInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            scratch.putInt(bytes.length).put(bytes);
+        }
+
+        private void ensure(int extra) {
+            if (scratch.remaining() < extra) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + extra));
+                bigger.put(scratch.array(), 0, scratch.position());
+                scratch = bigger;
+            }
+        }
+
+        private void end() {
+            int len = scratch.position();
+            crc.reset();
+            crc.update(scratch.array(), 0, len);
+            writeFrame(scratch.array(), len, (int) crc.getValue());
+        }
+    }
+}
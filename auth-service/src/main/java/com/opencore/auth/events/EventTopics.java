@@ -0,0 +1,7 @@
+package com.opencore.auth.events;
+
+public final class EventTopics {
+    private EventTopics() {}
+
+    public static final String TOKEN_REVOKED = "opencore.auth.v1.token-revoked";
+}
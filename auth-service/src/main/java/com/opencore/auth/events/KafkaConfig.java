@@ -0,0 +1,63 @@
+package com.opencore.auth.events;
+
+import com.opencore.auth.core.OpenCoreJwtProperties;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(prefix = "opencore.revocation", name = "replicated", havingValue = "true")
+public class KafkaConfig {
+    @Bean
+    public KafkaTemplate<byte[], byte[]> revocationKafkaTemplate(KafkaProperties props) {
+        Map<String, Object> cfg = new HashMap<>(props.buildProducerProperties());
+        cfg.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        cfg.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        cfg.putIfAbsent(ProducerConfig.LINGER_MS_CONFIG, 1);
+        // Revocations are applied locally before publishing; don't hold a request thread for long if Kafka is away.
+        cfg.putIfAbsent(ProducerConfig.MAX_BLOCK_MS_CONFIG, 2000);
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(cfg));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<byte[], byte[]> revocationListenerFactory(KafkaProperties props) {
+        Map<String, Object> cfg = new HashMap<>(props.buildConsumerProperties());
+        cfg.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        cfg.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        // Partitions are assigned directly, outside any group; RevocationReplicator seeks on start and nothing is committed.
+        cfg.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        cfg.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        cfg.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        ConcurrentKafkaListenerContainerFactory<byte[], byte[]> f = new ConcurrentKafkaListenerContainerFactory<>();
+        f.setConsumerFactory(new DefaultKafkaConsumerFactory<>(cfg));
+        f.setBatchListener(true);
+        return f;
+    }
+
+    // Only access tokens are replicated, so nothing on the topic matters after an access TTL. RevocationReplicator
+    // reads the partitions declared here.
+    @Bean
+    public NewTopic tokenRevokedTopic(OpenCoreJwtProperties jwt) {
+        long retentionMillis = jwt.accessTtlSeconds() * 1000;
+        return TopicBuilder.name(EventTopics.TOKEN_REVOKED)
+                .partitions(3)
+                .replicas(1)
+                .config(TopicConfig.RETENTION_MS_CONFIG, Long.toString(retentionMillis))
+                .build();
+    }
+}
@@ -0,0 +1,106 @@
+package com.opencore.auth.events;
+
+import com.opencore.auth.core.AuthService;
+import com.opencore.auth.core.OpenCoreJwtProperties;
+import com.opencore.auth.core.RevocationFilter;
+import com.opencore.auth.core.RevocationPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes this replica's revocations as (jti, exp) records and applies every replica's records, including its own
+ * echoes, to the local {@link RevocationFilter}.
+ *
+ * Every replica reads every partition, so there is no consumer group: partitions are assigned directly and no offsets
+ * are committed. On startup each replica seeks back one access TTL, the oldest a revoked token can be and still be
+ * accepted elsewhere.
+ */
+@Component
+@ConditionalOnProperty(prefix = "opencore.revocation", name = "replicated", havingValue = "true")
+public class RevocationReplicator implements RevocationPublisher, ConsumerSeekAware {
+    private static final Logger log = LoggerFactory.getLogger(RevocationReplicator.class);
+    private static final int VALUE_BYTES = 24;
+
+    private final RevocationFilter revocations;
+    private final KafkaTemplate<byte[], byte[]> kafka;
+    private final Counter published;
+    private final Counter publishFailures;
+    private final Counter received;
+    private final Timer propagation;
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final long replayMillis;
+
+    public RevocationReplicator(AuthService auth, OpenCoreJwtProperties jwt, KafkaTemplate<byte[], byte[]> revocationKafkaTemplate,
+                                MeterRegistry registry) {
+        this.revocations = auth.revocations();
+        this.replayMillis = jwt.accessTtlSeconds() * 1000;
+        this.kafka = revocationKafkaTemplate;
+        this.published = Counter.builder("opencore.auth.revocations.published").register(registry);
+        this.publishFailures = Counter.builder("opencore.auth.revocations.publish.failures").register(registry);
+        this.received = Counter.builder("opencore.auth.revocations.received").register(registry);
+        this.propagation = Timer.builder("opencore.auth.revocations.propagation")
+                .description("Time from publishing a revocation to applying it here")
+                .publishPercentileHistogram()
+                .register(registry);
+        revocations.publishTo(this);
+    }
+
+    @Override
+    public void revoked(long jtiHi, long jtiLo, long expEpochSeconds) {
+        byte[] key = ByteBuffer.allocate(16).putLong(jtiHi).putLong(jtiLo).array();
+        byte[] value = ByteBuffer.allocate(VALUE_BYTES).putLong(jtiHi).putLong(jtiLo).putLong(expEpochSeconds).array();
+        kafka.send(EventTopics.TOKEN_REVOKED, key, value).whenComplete((r, e) -> {
+            if (e == null) {
+                published.increment();
+            } else {
+                publishFailures.increment();
+                log.warn("failed to publish token revocation", e);
+            }
+        });
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        callback.seekToTimestamp(assignments.keySet(), startedAtMillis - replayMillis);
+    }
+
+    @KafkaListener(
+            topicPartitions = @org.springframework.kafka.annotation.TopicPartition(
+                    topic = EventTopics.TOKEN_REVOKED,
+                    partitions = "0-#{@tokenRevokedTopic.numPartitions() - 1}"
+            ),
+            containerFactory = "revocationListenerFactory"
+    )
+    public void onRevoked(List<ConsumerRecord<byte[], byte[]>> records) {
+        long now = System.currentTimeMillis();
+        for (ConsumerRecord<byte[], byte[]> record : records) {
+            byte[] value = record.value();
+            if (value == null || value.length != VALUE_BYTES) {
+                log.warn("skipping malformed token revocation at {}-{}@{}", record.topic(), record.partition(), record.offset());
+                continue;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(value);
+            revocations.apply(buf.getLong(), buf.getLong(), buf.getLong());
+            received.increment();
+            // The startup replay would swamp the lag distribution, so only records published since then count.
+            if (record.timestamp() >= startedAtMillis) {
+                propagation.record(Math.max(0, now - record.timestamp()), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
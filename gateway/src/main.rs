@@ -1,8 +1,8 @@
 use axum::{
     body::Body,
-    extract::{Path, State},
-    http::{HeaderMap, Method, Request, StatusCode, Uri},
-    middleware::{from_fn_with_state, Next},
+    extract::{ConnectInfo, Path, State},
+    http::{HeaderMap, HeaderValue, Method, Request, StatusCode, Uri},
+    middleware::{from_fn, from_fn_with_state, Next},
     response::{IntoResponse, Response},
     routing::{any, get},
     Router,
@@ -174,7 +174,9 @@ async fn main() {
     info!(%addr, "gateway listening");
 
     let listener = tokio::net::TcpListener::bind(addr).await.expect("bind");
-    axum::serve(listener, app).await.expect("serve");
+    axum::serve(listener, app.into_make_service_with_connect_info::<SocketAddr>())
+        .await
+        .expect("serve");
 }
 
 fn build_app(state: Arc<AppState>) -> Router {
@@ -184,6 +186,7 @@ fn build_app(state: Arc<AppState>) -> Router {
         .route("/users/*path", any(proxy_user))
         .route("/billing/*path", any(proxy_billing))
         .route("/notifications/*path", any(proxy_notification))
+        .layer(from_fn(forwarded_for_middleware))
         .layer(from_fn_with_state(state.clone(), rate_limit_middleware))
         .layer(from_fn_with_state(state.clone(), auth_middleware))
         .with_state(state)
@@ -268,6 +271,34 @@ async fn rate_limit_middleware(
     Ok(next.run(req).await)
 }
 
+// Appends the peer's address to X-Forwarded-For before proxying. Upstreams should only believe the right-most entries,
+// the ones added by proxies they trust; anything further left came from the client.
+async fn forwarded_for_middleware(mut req: Request<Body>, next: Next) -> Response {
+    let peer = req
+        .extensions()
+        .get::<ConnectInfo<SocketAddr>>()
+        .map(|ConnectInfo(addr)| addr.ip().to_string());
+    if let Some(peer) = peer {
+        let prior: Vec<&str> = req
+            .headers()
+            .get_all("x-forwarded-for")
+            .iter()
+            .filter_map(|v| v.to_str().ok())
+            .map(|s| s.trim())
+            .filter(|s| !s.is_empty())
+            .collect();
+        let value = if prior.is_empty() {
+            peer
+        } else {
+            format!("{}, {peer}", prior.join(", "))
+        };
+        if let Ok(value) = HeaderValue::from_str(&value) {
+            req.headers_mut().insert("x-forwarded-for", value);
+        }
+    }
+    next.run(req).await
+}
+
 async fn proxy_auth(
     State(state): State<Arc<AppState>>,
     method: Method,
@@ -638,4 +669,54 @@ mod tests {
             .unwrap();
         assert_eq!(res2.status(), StatusCode::TOO_MANY_REQUESTS);
     }
+
+    #[tokio::test]
+    async fn proxy_appends_peer_to_forwarded_for() {
+        let upstream = start_mock(Router::new().route(
+            "/*path",
+            any(|headers: HeaderMap| async move {
+                let xff = headers
+                    .get("x-forwarded-for")
+                    .and_then(|v| v.to_str().ok())
+                    .unwrap_or_default()
+                    .to_string();
+                (StatusCode::OK, xff)
+            }),
+        ))
+        .await;
+
+        let state = test_state(
+            Routes {
+                auth_base: upstream,
+                user_base: "http://127.0.0.1".into(),
+                billing_base: "http://127.0.0.1".into(),
+                notification_base: "http://127.0.0.1".into(),
+            },
+            AuthConfig {
+                jwt_secret: None,
+                jwt_issuer: "opencore".into(),
+            },
+            RateLimitConfig {
+                rps: 1000.0,
+                burst: 1000.0,
+            },
+        );
+
+        let app = build_app(state);
+        let res = app
+            .oneshot(
+                Request::builder()
+                    .method("GET")
+                    .uri("/auth/ping")
+                    .header("x-forwarded-for", "198.51.100.1")
+                    .extension(ConnectInfo(SocketAddr::from(([203, 0, 113, 7], 40000))))
+                    .body(Body::empty())
+                    .unwrap(),
+            )
+            .await
+            .unwrap();
+        assert_eq!(res.status(), StatusCode::OK);
+        let body = axum::body::to_bytes(res.into_body(), usize::MAX).await.unwrap();
+        assert_eq!(String::from_utf8(body.to_vec()).unwrap(), "198.51.100.1, 203.0.113.7");
+    }
 }
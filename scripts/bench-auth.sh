@@ -0,0 +1,19 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+THREADS="${THREADS:-1 8 32}"
+OUT="$ROOT/auth-benchmarks/target/jmh-results"
+
+(cd "$ROOT/token-verifier" && mvn -B -ntp -q install)
+(cd "$ROOT/auth-service" && mvn -B -ntp -q install -DskipTests)
+(cd "$ROOT/auth-benchmarks" && mvn -B -ntp -q package)
+
+mkdir -p "$OUT"
+for t in $THREADS; do
+  echo "== $t thread(s)"
+  java -jar "$ROOT/auth-benchmarks/target/benchmarks.jar" \
+    -t "$t" -prof gc -rf json -rff "$OUT/threads-$t.json" "$@"
+done
+
+echo "results in $OUT"
@@ -0,0 +1,32 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+# Runs the auth login-flow load generator. Starts a local auth-service unless BASE already answers.
+# Extra arguments go to the generator, e.g. ./scripts/loadgen-auth.sh --loads=1000,2000,4000 --duration=60
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+BASE="${BASE:-http://localhost:8081}"
+AUTH_PID=""
+
+cleanup() {
+  if [ -n "$AUTH_PID" ]; then
+    kill "$AUTH_PID" 2>/dev/null || true
+  fi
+}
+trap cleanup EXIT
+
+(cd "$ROOT/auth-loadgen" && mvn -B -ntp -q package)
+
+if ! curl -sf "$BASE/actuator/health" >/dev/null 2>&1; then
+  echo "== starting auth-service (log: /tmp/opencore-auth-loadgen.log)"
+  (cd "$ROOT/token-verifier" && mvn -B -ntp -q install)
+  (cd "$ROOT/auth-service" && exec mvn -q spring-boot:run -DskipTests) >/tmp/opencore-auth-loadgen.log 2>&1 &
+  AUTH_PID=$!
+  for _ in $(seq 1 120); do
+    curl -sf "$BASE/actuator/health" >/dev/null 2>&1 && break
+    sleep 1
+  done
+  curl -sf "$BASE/actuator/health" >/dev/null || { echo "auth-service did not become healthy at $BASE" >&2; exit 1; }
+fi
+
+java -jar "$ROOT/auth-loadgen/target/auth-loadgen.jar" --base="$BASE" --out="$ROOT/auth-loadgen/target/loadgen" "$@"
@@ -0,0 +1,60 @@
+package com.opencore.token;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * Verifies the request's bearer access token and exposes its claims through {@link #verifiedToken(ServletRequest)}.
+ *
+ * A bearer token that is present but invalid is always rejected with 401. Requests without one (including other
+ * Authorization schemes) pass through anonymously unless the filter was created with requireToken.
+ */
+public class AccessTokenFilter extends HttpFilter {
+    public static final String ATTRIBUTE = VerifiedToken.class.getName();
+    private static final String BEARER = "Bearer ";
+
+    private final AccessTokenVerifier verifier;
+    private final boolean requireToken;
+
+    public AccessTokenFilter(AccessTokenVerifier verifier, boolean requireToken) {
+        this.verifier = verifier;
+        this.requireToken = requireToken;
+    }
+
+    public static VerifiedToken verifiedToken(ServletRequest request) {
+        return (VerifiedToken) request.getAttribute(ATTRIBUTE);
+    }
+
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        String header = request.getHeader("Authorization");
+        if (header == null || !header.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            if (requireToken) {
+                reject(response, "Bearer");
+                return;
+            }
+            chain.doFilter(request, response);
+            return;
+        }
+
+        VerifiedToken token = verifier.verify(header.substring(BEARER.length()).trim());
+        if (token == null) {
+            reject(response, "Bearer error=\"invalid_token\"");
+            return;
+        }
+        request.setAttribute(ATTRIBUTE, token);
+        chain.doFilter(request, response);
+    }
+
+    private static void reject(HttpServletResponse response, String challenge) throws IOException {
+        response.setHeader("WWW-Authenticate", challenge);
+        response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+    }
+}
@@ -0,0 +1,57 @@
+package com.opencore.token;
+
+import io.jsonwebtoken.security.Keys;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Verifies OpenCore access tokens in-process with the same codec auth-service mints them with.
+ *
+ * Clients send the same token on every request until it expires, so verified tokens are remembered in a small
+ * direct-mapped cache keyed by the full token string; a hit costs a hash and a string compare instead of an HMAC.
+ * Entries are only served until the token's exp, and a colliding token simply replaces the slot.
+ */
+public class AccessTokenVerifier {
+    private static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private final JwtCodec codec;
+    private final AtomicReferenceArray<Entry> cache;
+    private final int mask;
+
+    public AccessTokenVerifier(String issuer, String secret) {
+        this(issuer, secret, DEFAULT_CACHE_SIZE);
+    }
+
+    public AccessTokenVerifier(String issuer, String secret, int cacheSize) {
+        this.codec = new JwtCodec(issuer, Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)));
+        int size = Integer.highestOneBit(Math.max(1, cacheSize - 1) << 1);
+        this.cache = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /** Returns the token's claims, or null unless it is a correctly signed, unexpired access token from our issuer. */
+    public VerifiedToken verify(String token) {
+        if (token == null || token.isEmpty()) return null;
+        long now = System.currentTimeMillis();
+        int slot = token.hashCode() & mask;
+        Entry e = cache.get(slot);
+        if (e != null && e.token.equals(token)) {
+            return now < e.expiresAtMillis ? e.claims : null;
+        }
+
+        JwtCodec.Decoded decoded;
+        try {
+            decoded = codec.decode(token, now);
+        } catch (RuntimeException invalid) {
+            return null;
+        }
+        if (!"access".equals(decoded.typ()) || decoded.subject() == null) return null;
+
+        VerifiedToken claims = new VerifiedToken(decoded.subject(), decoded.role(), decoded.jti(), decoded.expEpochSeconds());
+        cache.set(slot, new Entry(token, claims, decoded.expEpochSeconds() * 1000));
+        return claims;
+    }
+
+    private record Entry(String token, VerifiedToken claims, long expiresAtMillis) {}
+}
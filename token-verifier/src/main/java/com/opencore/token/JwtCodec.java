@@ -0,0 +1,672 @@
+package com.opencore.token;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.IncorrectClaimException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * Specialized HS256/384/512 JWS codec for OpenCore's fixed claim shapes.
+ *
+ * Output matches what jjwt 0.12 produces for the same key and claims: a {"alg":"HSxxx"} header, compact JSON
+ * claims with Jackson's escaping rules, unpadded base64url segments. Tokens minted by jjwt verify here and
+ * vice versa; the gateway verifies both the same way.
+ */
+public final class JwtCodec {
+    private static final byte[] B64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] B64_INV = new byte[128];
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] K_ISS = ascii("iss");
+    private static final byte[] K_SUB = ascii("sub");
+    private static final byte[] K_JTI = ascii("jti");
+    private static final byte[] K_EXP = ascii("exp");
+    private static final byte[] K_NBF = ascii("nbf");
+    private static final byte[] K_TYP = ascii("typ");
+    private static final byte[] K_ROLE = ascii("role");
+    private static final byte[] K_DEVICE_ID = ascii("deviceId");
+    private static final byte[] K_ALG = ascii("alg");
+    private static final byte[] K_CRIT = ascii("crit");
+    private static final byte[] K_ZIP = ascii("zip");
+    private static final byte[] K_B64 = ascii("b64");
+
+    private static final byte[] F_SUB = ascii(",\"sub\":\"");
+    private static final byte[] F_JTI = ascii(",\"jti\":\"");
+    private static final byte[] F_IAT = ascii(",\"iat\":");
+    private static final byte[] F_EXP = ascii(",\"exp\":");
+    private static final byte[] F_TYP = ascii(",\"typ\":\"");
+    private static final byte[] F_ROLE = ascii(",\"role\":\"");
+    private static final byte[] F_DEVICE_ID = ascii(",\"deviceId\":\"");
+
+    static {
+        Arrays.fill(B64_INV, (byte) -1);
+        for (int i = 0; i < B64.length; i++) {
+            B64_INV[B64[i]] = (byte) i;
+        }
+    }
+
+    private final String issuer;
+    private final SecretKey key;
+    private final String jcaAlgorithm;
+    private final String jwsAlgorithm;
+    private final String encodedHeader;
+    private final byte[] headerAndDot;
+    private final byte[] claimsPrefix;
+    private final ThreadLocal<Buffers> buffers;
+
+    public JwtCodec(String issuer, SecretKey key) {
+        this.issuer = issuer;
+        this.key = key;
+        this.jcaAlgorithm = key.getAlgorithm();
+        this.jwsAlgorithm = switch (jcaAlgorithm) {
+            case "HmacSHA256" -> "HS256";
+            case "HmacSHA384" -> "HS384";
+            case "HmacSHA512" -> "HS512";
+            default -> throw new IllegalArgumentException("unsupported key algorithm: " + jcaAlgorithm);
+        };
+
+        byte[] header = ascii("{\"alg\":\"" + jwsAlgorithm + "\"}");
+        byte[] encoded = new byte[encodedLength(header.length) + 1];
+        int n = encode(header, 0, header.length, encoded, 0);
+        encoded[n] = '.';
+        this.headerAndDot = encoded;
+        this.encodedHeader = new String(encoded, 0, n, StandardCharsets.US_ASCII);
+
+        Buffers scratch = new Buffers(64);
+        scratch.json = ensure(scratch.json, 0, 9 + 6 * issuer.length() + 9);
+        int len = put(scratch.json, 0, ascii("{\"iss\":\""));
+        len = putJsonString(scratch, len, issuer);
+        scratch.json[len++] = '"';
+        this.claimsPrefix = Arrays.copyOf(scratch.json, len);
+
+        this.buffers = ThreadLocal.withInitial(() -> new Buffers(256));
+    }
+
+    public String encodeAccess(String subject, String jti, String role, long iatEpochSeconds, long expEpochSeconds) {
+        return encode(subject, jti, iatEpochSeconds, expEpochSeconds, "access", F_ROLE, role);
+    }
+
+    public String encodeRefresh(String subject, String jti, String deviceId, long iatEpochSeconds, long expEpochSeconds) {
+        return encode(subject, jti, iatEpochSeconds, expEpochSeconds, "refresh", F_DEVICE_ID, deviceId);
+    }
+
+    public Decoded decode(String token, long nowMillis) {
+        if (token == null) {
+            throw new MalformedJwtException("JWT string cannot be null");
+        }
+        int dot1 = token.indexOf('.');
+        int dot2 = dot1 < 0 ? -1 : token.indexOf('.', dot1 + 1);
+        if (dot1 <= 0 || dot2 < 0 || token.indexOf('.', dot2 + 1) >= 0) {
+            throw new MalformedJwtException("JWT must have exactly three segments");
+        }
+        if (dot2 + 1 == token.length()) {
+            throw new UnsupportedJwtException("unsigned JWTs are not supported");
+        }
+
+        Buffers b = buffers.get();
+        if (dot1 != encodedHeader.length() || !token.startsWith(encodedHeader)) {
+            checkHeader(b, token, dot1);
+        }
+
+        int signingLen = dot2;
+        b.out = ensure(b.out, 0, signingLen);
+        for (int i = 0; i < signingLen; i++) {
+            char c = token.charAt(i);
+            if (c >= 128) {
+                throw new MalformedJwtException("JWT contains non-ASCII characters");
+            }
+            b.out[i] = (byte) c;
+        }
+        b.mac.update(b.out, 0, signingLen);
+        try {
+            b.mac.doFinal(b.sig, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        int macLen = b.mac.getMacLength();
+        b.decoded = ensure(b.decoded, 0, token.length() - dot2);
+        int sigLen = decode(token, dot2 + 1, token.length(), b.decoded);
+        if (!constantTimeEquals(b.sig, b.decoded, macLen, sigLen)) {
+            throw new SignatureException("JWT signature does not match locally computed signature");
+        }
+
+        b.json = ensure(b.json, 0, dot2 - dot1);
+        int payloadLen = decode(token, dot1 + 1, dot2, b.json);
+        if (payloadLen < 0) {
+            throw new MalformedJwtException("invalid base64url payload");
+        }
+        Decoded claims = new ClaimsReader(b.json, payloadLen).readClaims();
+
+        if (!issuer.equals(claims.issuer)) {
+            throw new IncorrectClaimException(null, null, "iss", issuer,
+                    "expected iss claim to be: " + issuer + ", but was: " + claims.issuer);
+        }
+        if (claims.expEpochSeconds == Long.MIN_VALUE) {
+            throw new MalformedJwtException("exp claim required");
+        }
+        if (nowMillis > claims.expEpochSeconds * 1000) {
+            throw new ExpiredJwtException(null, null, "JWT expired");
+        }
+        if (claims.nbfEpochSeconds != Long.MIN_VALUE && nowMillis < claims.nbfEpochSeconds * 1000) {
+            throw new PrematureJwtException(null, null, "JWT must not be accepted before nbf");
+        }
+        return claims;
+    }
+
+    private String encode(String subject, String jti, long iat, long exp, String typ, byte[] extraField, String extra) {
+        Buffers b = buffers.get();
+        b.json = ensure(b.json, 0, claimsPrefix.length);
+        int len = put(b.json, 0, claimsPrefix);
+        // jjwt drops registered claims set to null or "", but writes custom ones whatever their value.
+        if (subject != null && !subject.isEmpty()) len = putStringClaim(b, len, F_SUB, subject);
+        if (jti != null && !jti.isEmpty()) len = putStringClaim(b, len, F_JTI, jti);
+        b.json = ensure(b.json, len, F_IAT.length + F_EXP.length + 40);
+        len = put(b.json, len, F_IAT);
+        len = putLong(b.json, len, iat);
+        len = put(b.json, len, F_EXP);
+        len = putLong(b.json, len, exp);
+        len = putStringClaim(b, len, F_TYP, typ);
+        len = putStringClaim(b, len, extraField, extra == null ? "" : extra);
+        b.json = ensure(b.json, len, 1);
+        b.json[len++] = '}';
+
+        int macLen = b.mac.getMacLength();
+        b.out = ensure(b.out, 0, headerAndDot.length + encodedLength(len) + 1 + encodedLength(macLen));
+        int pos = put(b.out, 0, headerAndDot);
+        pos = encode(b.json, 0, len, b.out, pos);
+        b.mac.update(b.out, 0, pos);
+        try {
+            b.mac.doFinal(b.sig, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        b.out[pos++] = '.';
+        pos = encode(b.sig, 0, macLen, b.out, pos);
+        return new String(b.out, 0, pos, StandardCharsets.US_ASCII);
+    }
+
+    private void checkHeader(Buffers b, String token, int end) {
+        b.json = ensure(b.json, 0, end);
+        int len = decode(token, 0, end, b.json);
+        if (len < 0) {
+            throw new MalformedJwtException("invalid base64url header");
+        }
+        if (!new ClaimsReader(b.json, len).readHeaderAlgorithm().equals(jwsAlgorithm)) {
+            throw new UnsupportedJwtException("unexpected JWS algorithm, expected " + jwsAlgorithm);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(jcaAlgorithm);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("unable to initialize " + jcaAlgorithm, e);
+        }
+    }
+
+    private static int putStringClaim(Buffers b, int pos, byte[] field, String value) {
+        b.json = ensure(b.json, pos, field.length);
+        pos = put(b.json, pos, field);
+        pos = putJsonString(b, pos, value);
+        b.json = ensure(b.json, pos, 1);
+        b.json[pos++] = '"';
+        return pos;
+    }
+
+    // Matches jjwt's Jackson output: quote, backslash, control characters and surrogates are escaped, other
+    // non-ASCII characters are written as raw UTF-8.
+    private static int putJsonString(Buffers b, int pos, String s) {
+        int n = s.length();
+        b.json = ensure(b.json, pos, n * 6);
+        byte[] dst = b.json;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                dst[pos++] = (byte) c;
+            } else if (c == '"' || c == '\\') {
+                dst[pos++] = '\\';
+                dst[pos++] = (byte) c;
+            } else if (c < 0x20) {
+                dst[pos++] = '\\';
+                switch (c) {
+                    case '\b' -> dst[pos++] = 'b';
+                    case '\t' -> dst[pos++] = 't';
+                    case '\n' -> dst[pos++] = 'n';
+                    case '\f' -> dst[pos++] = 'f';
+                    case '\r' -> dst[pos++] = 'r';
+                    default -> {
+                        dst[pos++] = 'u';
+                        dst[pos++] = '0';
+                        dst[pos++] = '0';
+                        dst[pos++] = HEX[c >> 4];
+                        dst[pos++] = HEX[c & 0xF];
+                    }
+                }
+            } else if (c < 0x800) {
+                dst[pos++] = (byte) (0xC0 | (c >> 6));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                dst[pos++] = '\\';
+                dst[pos++] = 'u';
+                dst[pos++] = HEX[c >> 12];
+                dst[pos++] = HEX[(c >> 8) & 0xF];
+                dst[pos++] = HEX[(c >> 4) & 0xF];
+                dst[pos++] = HEX[c & 0xF];
+            } else {
+                dst[pos++] = (byte) (0xE0 | (c >> 12));
+                dst[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    private static boolean constantTimeEquals(byte[] expected, byte[] actual, int expectedLen, int actualLen) {
+        if (expectedLen != actualLen) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < expectedLen; i++) {
+            diff |= expected[i] ^ actual[i];
+        }
+        return diff == 0;
+    }
+
+    private static int putLong(byte[] dst, int pos, long v) {
+        if (v < 0) {
+            dst[pos++] = '-';
+            v = -v;
+        }
+        int start = pos;
+        do {
+            dst[pos++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte t = dst[i];
+            dst[i] = dst[j];
+            dst[j] = t;
+        }
+        return pos;
+    }
+
+    private static int put(byte[] dst, int pos, byte[] src) {
+        System.arraycopy(src, 0, dst, pos, src.length);
+        return pos + src.length;
+    }
+
+    private static byte[] ensure(byte[] buf, int used, int extra) {
+        int needed = used + extra;
+        return needed <= buf.length ? buf : Arrays.copyOf(buf, Math.max(needed, buf.length * 2));
+    }
+
+    private static int encodedLength(int n) {
+        return (n / 3) * 4 + (n % 3 == 0 ? 0 : n % 3 + 1);
+    }
+
+    private static int encode(byte[] src, int off, int len, byte[] dst, int pos) {
+        int end = off + len - len % 3;
+        int i = off;
+        while (i < end) {
+            int v = (src[i++] & 0xFF) << 16 | (src[i++] & 0xFF) << 8 | (src[i++] & 0xFF);
+            dst[pos++] = B64[v >>> 18];
+            dst[pos++] = B64[(v >>> 12) & 0x3F];
+            dst[pos++] = B64[(v >>> 6) & 0x3F];
+            dst[pos++] = B64[v & 0x3F];
+        }
+        int rem = off + len - end;
+        if (rem == 1) {
+            int v = (src[i] & 0xFF) << 4;
+            dst[pos++] = B64[v >>> 6];
+            dst[pos++] = B64[v & 0x3F];
+        } else if (rem == 2) {
+            int v = (src[i] & 0xFF) << 10 | (src[i + 1] & 0xFF) << 2;
+            dst[pos++] = B64[v >>> 12];
+            dst[pos++] = B64[(v >>> 6) & 0x3F];
+            dst[pos++] = B64[v & 0x3F];
+        }
+        return pos;
+    }
+
+    // Returns the decoded length, or -1 if the segment is not unpadded base64url.
+    private static int decode(String s, int start, int end, byte[] dst) {
+        int len = end - start;
+        if (len % 4 == 1) {
+            return -1;
+        }
+        int pos = 0;
+        int acc = 0;
+        int bits = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            int v = c < 128 ? B64_INV[c] : -1;
+            if (v < 0) {
+                return -1;
+            }
+            acc = (acc << 6) | v;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                dst[pos++] = (byte) (acc >> bits);
+            }
+        }
+        return pos;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private final class Buffers {
+        final Mac mac = newMac();
+        final byte[] sig = new byte[64];
+        byte[] json;
+        byte[] out;
+        byte[] decoded;
+
+        Buffers(int size) {
+            json = new byte[size];
+            out = new byte[size * 2];
+            decoded = new byte[64];
+        }
+    }
+
+    public static final class Decoded {
+        String issuer;
+        String typ;
+        String subject;
+        String jti;
+        String role;
+        String deviceId;
+        long expEpochSeconds = Long.MIN_VALUE;
+        long nbfEpochSeconds = Long.MIN_VALUE;
+
+        public String issuer() {
+            return issuer;
+        }
+
+        public String typ() {
+            return typ;
+        }
+
+        public String subject() {
+            return subject;
+        }
+
+        public String jti() {
+            return jti;
+        }
+
+        public String role() {
+            return role;
+        }
+
+        public String deviceId() {
+            return deviceId;
+        }
+
+        public long expEpochSeconds() {
+            return expEpochSeconds;
+        }
+    }
+
+    // Minimal reader for flat JSON objects: only the claims we use are materialized, everything else is skipped.
+    private static final class ClaimsReader {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+
+        ClaimsReader(byte[] buf, int len) {
+            this.buf = buf;
+            this.end = len;
+        }
+
+        Decoded readClaims() {
+            Decoded d = new Decoded();
+            readObject(d, null);
+            return d;
+        }
+
+        String readHeaderAlgorithm() {
+            String[] alg = new String[1];
+            readObject(null, alg);
+            if (alg[0] == null) {
+                throw new MalformedJwtException("JWT header missing alg");
+            }
+            return alg[0];
+        }
+
+        private void readObject(Decoded claims, String[] alg) {
+            skipWs();
+            expect('{');
+            skipWs();
+            if (peek() == '}') {
+                pos++;
+                finish();
+                return;
+            }
+            while (true) {
+                skipWs();
+                expect('"');
+                int keyStart = pos;
+                int keyEnd = skipString();
+                skipWs();
+                expect(':');
+                skipWs();
+                if (claims != null) {
+                    readClaim(claims, keyStart, keyEnd);
+                } else if (is(K_ALG, keyStart, keyEnd)) {
+                    alg[0] = readString();
+                } else if (is(K_CRIT, keyStart, keyEnd) || is(K_ZIP, keyStart, keyEnd) || is(K_B64, keyStart, keyEnd)) {
+                    throw new UnsupportedJwtException("unsupported JWT header parameter");
+                } else {
+                    skipValue();
+                }
+                skipWs();
+                byte c = next();
+                if (c == '}') {
+                    finish();
+                    return;
+                }
+                if (c != ',') {
+                    throw malformed();
+                }
+            }
+        }
+
+        private void readClaim(Decoded d, int keyStart, int keyEnd) {
+            if (is(K_ISS, keyStart, keyEnd)) {
+                d.issuer = readString();
+            } else if (is(K_SUB, keyStart, keyEnd)) {
+                d.subject = readString();
+            } else if (is(K_JTI, keyStart, keyEnd)) {
+                d.jti = readString();
+            } else if (is(K_TYP, keyStart, keyEnd)) {
+                d.typ = readString();
+            } else if (is(K_ROLE, keyStart, keyEnd)) {
+                d.role = readString();
+            } else if (is(K_DEVICE_ID, keyStart, keyEnd)) {
+                d.deviceId = readString();
+            } else if (is(K_EXP, keyStart, keyEnd)) {
+                d.expEpochSeconds = readEpochSeconds();
+            } else if (is(K_NBF, keyStart, keyEnd)) {
+                d.nbfEpochSeconds = readEpochSeconds();
+            } else {
+                skipValue();
+            }
+        }
+
+        private boolean is(byte[] name, int start, int stop) {
+            return Arrays.equals(buf, start, stop, name, 0, name.length);
+        }
+
+        private void finish() {
+            skipWs();
+            if (pos != end) {
+                throw malformed();
+            }
+        }
+
+        private String readString() {
+            if (peek() == 'n') {
+                skipLiteral("null");
+                return null;
+            }
+            expect('"');
+            int start = pos;
+            boolean escaped = false;
+            while (true) {
+                byte c = next();
+                if (c == '"') break;
+                if (c == '\\') {
+                    escaped = true;
+                    next();
+                }
+            }
+            int stop = pos - 1;
+            if (!escaped) {
+                return new String(buf, start, stop - start, StandardCharsets.UTF_8);
+            }
+            StringBuilder sb = new StringBuilder(stop - start);
+            int run = start;
+            int i = start;
+            while (i < stop) {
+                if (buf[i] != '\\') {
+                    i++;
+                    continue;
+                }
+                sb.append(new String(buf, run, i - run, StandardCharsets.UTF_8));
+                byte e = buf[i + 1];
+                i += 2;
+                switch (e) {
+                    case '"', '\\', '/' -> sb.append((char) e);
+                    case 'b' -> sb.append('\b');
+                    case 't' -> sb.append('\t');
+                    case 'n' -> sb.append('\n');
+                    case 'f' -> sb.append('\f');
+                    case 'r' -> sb.append('\r');
+                    case 'u' -> {
+                        if (i + 4 > stop) throw malformed();
+                        int c = 0;
+                        for (int k = 0; k < 4; k++) {
+                            c = c << 4 | hexDigit(buf[i + k]);
+                        }
+                        sb.append((char) c);
+                        i += 4;
+                    }
+                    default -> throw malformed();
+                }
+                run = i;
+            }
+            sb.append(new String(buf, run, stop - run, StandardCharsets.UTF_8));
+            return sb.toString();
+        }
+
+        private static int hexDigit(byte c) {
+            if (c >= '0' && c <= '9') return c - '0';
+            if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+            if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+            throw malformed();
+        }
+
+        private long readEpochSeconds() {
+            int start = pos;
+            boolean integral = true;
+            while (pos < end) {
+                byte c = buf[pos];
+                if (c == '.' || c == 'e' || c == 'E' || c == '+') {
+                    integral = false;
+                } else if (c != '-' && (c < '0' || c > '9')) {
+                    break;
+                }
+                pos++;
+            }
+            if (pos == start) throw malformed();
+            String text = new String(buf, start, pos - start, StandardCharsets.US_ASCII);
+            try {
+                return integral ? Long.parseLong(text) : (long) Math.floor(Double.parseDouble(text));
+            } catch (NumberFormatException e) {
+                throw malformed();
+            }
+        }
+
+        private void skipValue() {
+            byte c = peek();
+            switch (c) {
+                case '"' -> {
+                    pos++;
+                    skipString();
+                }
+                case '{', '[' -> skipNested();
+                case 't' -> skipLiteral("true");
+                case 'f' -> skipLiteral("false");
+                case 'n' -> skipLiteral("null");
+                default -> readEpochSeconds();
+            }
+        }
+
+        private void skipNested() {
+            int depth = 0;
+            do {
+                byte c = next();
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        }
+
+        // Positioned just after the opening quote; returns the index of the closing quote.
+        private int skipString() {
+            while (true) {
+                byte c = next();
+                if (c == '"') return pos - 1;
+                if (c == '\\') next();
+            }
+        }
+
+        private void skipLiteral(String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                if (next() != literal.charAt(i)) throw malformed();
+            }
+        }
+
+        private void skipWs() {
+            while (pos < end && (buf[pos] == ' ' || buf[pos] == '\t' || buf[pos] == '\n' || buf[pos] == '\r')) {
+                pos++;
+            }
+        }
+
+        private void expect(char c) {
+            if (next() != c) throw malformed();
+        }
+
+        private byte peek() {
+            if (pos >= end) throw malformed();
+            return buf[pos];
+        }
+
+        private byte next() {
+            if (pos >= end) throw malformed();
+            return buf[pos++];
+        }
+
+        private static MalformedJwtException malformed() {
+            return new MalformedJwtException("malformed JWT JSON");
+        }
+    }
+}
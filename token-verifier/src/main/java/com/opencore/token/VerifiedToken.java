@@ -0,0 +1,9 @@
+package com.opencore.token;
+
+/** Claims of an access token whose signature, issuer and expiry have been checked. */
+public record VerifiedToken(
+        String subject,
+        String role,
+        String jti,
+        long expEpochSeconds
+) {}
@@ -0,0 +1,186 @@
+package com.opencore.token;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Cross-checks JwtCodec against jjwt 0.12, which minted and verified OpenCore tokens before it: the same claims must
+ * encode to the same bytes, and each side must accept what the other signs and reject the same edge cases.
+ */
+class JwtCodecCompatibilityTest {
+    private static final String ISSUER = "opencore-auth";
+    private static final long IAT = 1_760_000_000L;
+    private static final long EXP = IAT + 900;
+    private static final List<String> TEXTS = List.of(
+            "3f1c2a9e-5d7b-4c1e-9a0b-2f6e8d4c1a7b",
+            "Zoë",
+            "東京/ユーザー",
+            "smile 😀",
+            "quote \" backslash \\ slash /",
+            "controls \b\f\n\r\t \u0001\u001f",
+            "");
+
+    private final SecretKey key = Keys.hmacShaKeyFor("0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+    private final JwtCodec codec = new JwtCodec(ISSUER, key);
+
+    @Test
+    void encodesAccessTokensByteForByteLikeJjwt() {
+        for (String text : TEXTS) {
+            String jjwt = Jwts.builder()
+                    .issuer(ISSUER)
+                    .subject(text)
+                    .id("jti-" + text)
+                    .issuedAt(new Date(IAT * 1000))
+                    .expiration(new Date(EXP * 1000))
+                    .claim("typ", "access")
+                    .claim("role", text)
+                    .signWith(key)
+                    .compact();
+            assertEquals(jjwt, codec.encodeAccess(text, "jti-" + text, text, IAT, EXP), text);
+        }
+    }
+
+    @Test
+    void encodesRefreshTokensByteForByteLikeJjwt() {
+        for (String text : TEXTS) {
+            String jjwt = Jwts.builder()
+                    .issuer(ISSUER)
+                    .subject(text)
+                    .id("jti-" + text)
+                    .issuedAt(new Date(IAT * 1000))
+                    .expiration(new Date(EXP * 1000))
+                    .claim("typ", "refresh")
+                    .claim("deviceId", text)
+                    .signWith(key)
+                    .compact();
+            assertEquals(jjwt, codec.encodeRefresh(text, "jti-" + text, text, IAT, EXP), text);
+        }
+    }
+
+    @Test
+    void jjwtVerifiesWhatTheCodecSigns() {
+        for (String text : TEXTS) {
+            Claims claims = jjwt(IAT * 1000).parseSignedClaims(codec.encodeRefresh(text, text, text, IAT, EXP)).getPayload();
+            assertEquals(registered(text), claims.getSubject());
+            assertEquals(registered(text), claims.getId());
+            assertEquals(text, claims.get("deviceId", String.class));
+            assertEquals("refresh", claims.get("typ", String.class));
+            assertEquals(EXP, claims.getExpiration().getTime() / 1000);
+        }
+    }
+
+    @Test
+    void codecVerifiesWhatJjwtSigns() {
+        for (String text : TEXTS) {
+            String token = Jwts.builder()
+                    .issuer(ISSUER)
+                    .subject(text)
+                    .expiration(new Date(EXP * 1000))
+                    .claim("typ", "access")
+                    .claim("role", text)
+                    .claim("extra", List.of(text, 1, true))
+                    .signWith(key)
+                    .compact();
+            JwtCodec.Decoded d = codec.decode(token, IAT * 1000);
+            assertEquals(registered(text), d.subject());
+            assertEquals(text, d.role());
+            assertEquals("access", d.typ());
+            assertEquals(EXP, d.expEpochSeconds());
+        }
+    }
+
+    @Test
+    void decodesEscapesLikeJjwt() {
+        String json = "{\"iss\":\"" + ISSUER + "\",\"sub\":\"caf\\u00e9 \\u00E9 \\ud83d\\ude00 \\/ \\\" \\\\ \\n\\t\","
+                + "\"role\":\"\\u6771\\u4EAC\",\"exp\":" + EXP + "}";
+        String token = sign(json);
+        Claims claims = jjwt(IAT * 1000).parseSignedClaims(token).getPayload();
+        JwtCodec.Decoded d = codec.decode(token, IAT * 1000);
+        assertEquals("café é 😀 / \" \\ \n\t", d.subject());
+        assertEquals(claims.getSubject(), d.subject());
+        assertEquals(claims.get("role", String.class), d.role());
+    }
+
+    @Test
+    void rejectsMalformedUnicodeEscapes() {
+        for (String escape : List.of("\\u-001", "\\u+fff", "\\uzzzz", "\\u12g4", "\\u 123", "\\u12")) {
+            String token = sign("{\"iss\":\"" + ISSUER + "\",\"sub\":\"a" + escape + "\",\"exp\":" + EXP + "}");
+            assertThrows(MalformedJwtException.class, () -> codec.decode(token, IAT * 1000), escape);
+            assertThrows(JwtException.class, () -> jjwt(IAT * 1000).parseSignedClaims(token), escape);
+        }
+    }
+
+    @Test
+    void agreesWithJjwtOnExpiryEdges() {
+        String token = codec.encodeAccess("user", "jti", "user", IAT, EXP);
+        for (long now : new long[] {EXP * 1000 - 1, EXP * 1000, EXP * 1000 + 1, EXP * 1000 + 999}) {
+            assertSameOutcome(token, now, ExpiredJwtException.class);
+        }
+    }
+
+    @Test
+    void agreesWithJjwtOnNotBeforeEdges() {
+        long nbf = IAT + 60;
+        String token = sign("{\"iss\":\"" + ISSUER + "\",\"sub\":\"user\",\"nbf\":" + nbf + ",\"exp\":" + EXP + "}");
+        for (long now : new long[] {nbf * 1000 - 1000, nbf * 1000 - 1, nbf * 1000, nbf * 1000 + 1}) {
+            assertSameOutcome(token, now, PrematureJwtException.class);
+        }
+    }
+
+    private void assertSameOutcome(String token, long nowMillis, Class<? extends JwtException> rejection) {
+        boolean jjwtAccepts = accepts(() -> jjwt(nowMillis).parseSignedClaims(token), rejection);
+        boolean codecAccepts = accepts(() -> codec.decode(token, nowMillis), rejection);
+        assertEquals(jjwtAccepts, codecAccepts, "at " + nowMillis);
+    }
+
+    private static boolean accepts(Runnable parse, Class<? extends JwtException> rejection) {
+        try {
+            parse.run();
+            return true;
+        } catch (JwtException e) {
+            if (!rejection.isInstance(e)) fail("unexpected " + e);
+            return false;
+        }
+    }
+
+    // Both sides leave out registered claims whose value is empty, so they read back as absent.
+    private static String registered(String text) {
+        return text.isEmpty() ? null : text;
+    }
+
+    private JwtParser jjwt(long nowMillis) {
+        return Jwts.parser().verifyWith(key).requireIssuer(ISSUER).clock(() -> new Date(nowMillis)).build();
+    }
+
+    // Signs raw claims JSON, so the payload can hold escapes jjwt's own serializer would never write.
+    private String sign(String claimsJson) {
+        Base64.Encoder b64 = Base64.getUrlEncoder().withoutPadding();
+        String signingInput = b64.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + b64.encodeToString(claimsJson.getBytes(StandardCharsets.UTF_8));
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return signingInput + "." + b64.encodeToString(mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
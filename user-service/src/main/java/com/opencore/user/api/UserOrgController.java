@@ -1,21 +1,46 @@
 package com.opencore.user.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.opencore.user.api.dto.*;
 import com.opencore.user.core.UserOrgService;
+import com.opencore.user.persistence.OrgMember;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/v1")
 public class UserOrgController {
+    private static final Logger log = LoggerFactory.getLogger(UserOrgController.class);
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_JSON_BATCH = 10_000;
+    private static final int IMPORT_CHUNK = 1_000;
+    private static final int MAX_MEMBER_PAGE = 1_000;
+
     private final UserOrgService svc;
+    private final ObjectMapper json;
 
-    public UserOrgController(UserOrgService svc) {
+    public UserOrgController(UserOrgService svc, ObjectMapper json) {
         this.svc = svc;
+        this.json = json;
     }
 
     @PostMapping("/users")
@@ -24,9 +49,60 @@ public class UserOrgController {
         return ResponseEntity.ok(new CreateUserResponse(userId.toString()));
     }
 
+    @PostMapping(value = "/users:batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchCreateUsersResponse> createUsers(@RequestBody BatchCreateUsersRequest request) {
+        List<String> emails = request.emails() == null ? List.of() : request.emails();
+        if (emails.size() > MAX_JSON_BATCH) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "at most " + MAX_JSON_BATCH + " emails per request; stream larger imports as " + NDJSON);
+        }
+        List<BatchUserResult> results = new ArrayList<>(emails.size());
+        int[] counts = new int[UserOrgService.ImportStatus.values().length];
+        for (int from = 0; from < emails.size(); from += IMPORT_CHUNK) {
+            for (var r : svc.importUsers(emails.subList(from, Math.min(emails.size(), from + IMPORT_CHUNK)))) {
+                counts[r.status().ordinal()]++;
+                results.add(toResult(results.size(), r));
+            }
+        }
+        return ResponseEntity.ok(new BatchCreateUsersResponse(
+                counts[UserOrgService.ImportStatus.CREATED.ordinal()],
+                counts[UserOrgService.ImportStatus.EXISTING.ordinal()],
+                counts[UserOrgService.ImportStatus.DUPLICATE.ordinal()],
+                counts[UserOrgService.ImportStatus.INVALID.ordinal()],
+                counts[UserOrgService.ImportStatus.CONFLICT.ordinal()],
+                results
+        ));
+    }
+
+    /**
+     * Streaming import: one {"email": ...} object per non-blank request line, one result per response line, in order.
+     * Lines are read, committed and answered a chunk at a time, so neither side is ever held in memory. Chunks already
+     * answered stay committed if the import fails part way.
+     */
+    @PostMapping(value = "/users:batch", consumes = NDJSON, produces = NDJSON)
+    public void createUsersStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        OutputStream out = response.getOutputStream();
+        BufferedReader in = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        List<String> chunk = new ArrayList<>(IMPORT_CHUNK);
+        int index = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank()) continue;
+            chunk.add(emailOf(line));
+            if (chunk.size() == IMPORT_CHUNK) {
+                index = writeChunk(out, chunk, index);
+            }
+        }
+        writeChunk(out, chunk, index);
+    }
+
     @GetMapping("/users/{userId}/orgs")
-    public ResponseEntity<List<Map<String, Object>>> listOrgs(@PathVariable String userId) {
-        return ResponseEntity.ok(svc.listOrganizationsForUser(UUID.fromString(userId)));
+    public ResponseEntity<List<UserOrgResponse>> listOrgs(@PathVariable("userId") String userId) {
+        List<UserOrgResponse> orgs = svc.listOrganizationsForUser(UUID.fromString(userId)).stream()
+                .map(o -> new UserOrgResponse(o.orgId().toString(), o.orgName(), o.role()))
+                .toList();
+        return ResponseEntity.ok(orgs);
     }
 
     @PostMapping("/orgs")
@@ -40,4 +116,139 @@ public class UserOrgController {
         svc.addMember(UUID.fromString(request.orgId()), UUID.fromString(request.userId()), request.role());
         return ResponseEntity.ok().build();
     }
+
+    @PostMapping("/orgs/{orgId}/members:batch")
+    public ResponseEntity<BatchAddMembersResponse> addMembers(@PathVariable("orgId") String orgId,
+                                                              @RequestBody BatchAddMembersRequest request) {
+        List<BatchMember> members = request.members() == null ? List.of() : request.members();
+        if (members.size() > MAX_JSON_BATCH) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "at most " + MAX_JSON_BATCH + " members per request");
+        }
+        List<UserOrgService.NewMember> input = members.stream()
+                .map(m -> m == null ? null : new UserOrgService.NewMember(m.userId(), m.role()))
+                .toList();
+        List<BatchMemberResult> results = new ArrayList<>(members.size());
+        int[] counts = new int[UserOrgService.MemberStatus.values().length];
+        for (var r : svc.addMembers(UUID.fromString(orgId), input)) {
+            counts[r.status().ordinal()]++;
+            // Invalid entries echo what was sent, so the caller can find them.
+            String userId = r.userId() != null ? r.userId().toString()
+                    : members.get(results.size()) == null ? null : members.get(results.size()).userId();
+            results.add(new BatchMemberResult(results.size(), userId, r.role(), r.status().name().toLowerCase()));
+        }
+        return ResponseEntity.ok(new BatchAddMembersResponse(
+                counts[UserOrgService.MemberStatus.ADDED.ordinal()],
+                counts[UserOrgService.MemberStatus.UPDATED.ordinal()],
+                counts[UserOrgService.MemberStatus.UNCHANGED.ordinal()],
+                counts[UserOrgService.MemberStatus.DUPLICATE.ordinal()],
+                counts[UserOrgService.MemberStatus.INVALID.ordinal()],
+                counts[UserOrgService.MemberStatus.USER_NOT_FOUND.ordinal()],
+                results
+        ));
+    }
+
+    /**
+     * The org's members with their emails, oldest first, optionally only those with {@code role}. Pass the returned
+     * {@code nextCursor} back as {@code cursor} for the next page, with the same role; it is null on the last page.
+     */
+    @GetMapping("/orgs/{orgId}/members")
+    public ResponseEntity<OrgMemberPageResponse> listMembers(
+            @PathVariable("orgId") String orgId,
+            @RequestParam(name = "limit", defaultValue = "100") int limit,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "role", required = false) String role
+    ) {
+        int clamped = Math.max(1, Math.min(limit, MAX_MEMBER_PAGE));
+        Position after = cursor == null ? new Position(null, null) : Position.decode(cursor);
+
+        // One extra row says whether there is a next page without counting.
+        List<OrgMember> rows = svc.listMembers(UUID.fromString(orgId), role, after.createdAt(), after.userId(), clamped + 1);
+        String next = null;
+        if (rows.size() > clamped) {
+            rows = rows.subList(0, clamped);
+            OrgMember last = rows.get(clamped - 1);
+            next = new Position(last.createdAt(), last.userId()).encode();
+        }
+        return ResponseEntity.ok(new OrgMemberPageResponse(rows.stream().map(UserOrgController::toDto).toList(), next));
+    }
+
+    /**
+     * All of the org's members as NDJSON, one page item per line, for clients that ask for {@value NDJSON}. Rows go
+     * from a database cursor straight to the response, so memory does not grow with the org. A client that
+     * disconnects ends the dump and releases its connection.
+     */
+    @GetMapping(value = "/orgs/{orgId}/members", produces = NDJSON)
+    public void exportMembers(
+            @PathVariable("orgId") String orgId,
+            @RequestParam(name = "role", required = false) String role,
+            HttpServletResponse response
+    ) throws IOException {
+        UUID id = UUID.fromString(orgId);
+        response.setContentType(NDJSON);
+        OutputStream out = response.getOutputStream();
+        long[] rows = {0};
+        try {
+            svc.exportMembers(id, role, m -> {
+                try {
+                    out.write(json.writeValueAsBytes(toDto(m)));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            });
+            out.flush();
+        } catch (UncheckedIOException | IOException e) {
+            // Nothing more can be sent; the cursor and its connection are already released.
+            log.debug("member export for org {} aborted after {} rows: {}", orgId, rows[0], e.toString());
+        }
+    }
+
+    private int writeChunk(OutputStream out, List<String> chunk, int index) throws IOException {
+        if (chunk.isEmpty()) return index;
+        for (var r : svc.importUsers(chunk)) {
+            out.write(json.writeValueAsBytes(toResult(index++, r)));
+            out.write('\n');
+        }
+        out.flush();
+        chunk.clear();
+        return index;
+    }
+
+    // Malformed lines become a null email, which the import reports as invalid at that line's index.
+    private String emailOf(String line) {
+        try {
+            return json.readValue(line, CreateUserRequest.class).email();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static OrgMemberResponse toDto(OrgMember m) {
+        return new OrgMemberResponse(m.userId().toString(), m.email(), m.role(), m.createdAt().toString());
+    }
+
+    private static BatchUserResult toResult(int index, UserOrgService.ImportedUser r) {
+        return new BatchUserResult(index, r.email(), r.userId() == null ? null : r.userId().toString(),
+                r.status().name().toLowerCase());
+    }
+
+    // The opaque cursor: the last member's (created_at, user_id), base64url encoded.
+    private record Position(Instant createdAt, UUID userId) {
+        String encode() {
+            String text = createdAt + "/" + userId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Position decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("/");
+                if (parts.length == 2) return new Position(Instant.parse(parts[0]), UUID.fromString(parts[1]));
+            } catch (RuntimeException ignored) {
+                // Falls through to the 400 below.
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid cursor");
+        }
+    }
 }
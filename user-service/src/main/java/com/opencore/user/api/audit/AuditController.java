@@ -1,51 +1,244 @@
 package com.opencore.user.api.audit;
 
-import com.opencore.user.persistence.AuditLogEntity;
-import com.opencore.user.persistence.AuditLogRepository;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.opencore.user.api.dto.AuditLogResponse;
+import com.opencore.user.api.dto.AuditPageResponse;
+import com.opencore.user.core.AuditTrail;
+import com.opencore.user.persistence.AuditFilter;
+import com.opencore.user.persistence.AuditRow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/v1/audit")
 public class AuditController {
-    private final AuditLogRepository audit;
+    private static final Logger log = LoggerFactory.getLogger(AuditController.class);
 
-    public AuditController(AuditLogRepository audit) {
+    private final AuditTrail audit;
+    private final ObjectMapper json;
+    private final MeterRegistry meterRegistry;
+
+    public AuditController(AuditTrail audit, ObjectMapper json, MeterRegistry meterRegistry) {
         this.audit = audit;
+        this.json = json;
+        this.meterRegistry = meterRegistry;
     }
 
+    /**
+     * Newest first. Pass the returned {@code nextCursor} back as {@code cursor} for the next page, with the same
+     * filters; it is null on the last page. Archived rows are included, read once a page gets past the hot window.
+     */
     @GetMapping("/orgs/{orgId}")
-    public ResponseEntity<List<Map<String, Object>>> listOrgAudit(
-            @PathVariable String orgId,
-            @RequestParam(defaultValue = "50") int limit
+    public ResponseEntity<AuditPageResponse> listOrgAudit(
+            @PathVariable("orgId") String orgId,
+            @RequestParam(name = "limit", defaultValue = "50") int limit,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "action", required = false) String action,
+            @RequestParam(name = "resourceType", required = false) String resourceType,
+            @RequestParam(name = "resourceId", required = false) String resourceId,
+            @RequestParam(name = "actorUserId", required = false) UUID actorUserId,
+            @RequestParam(name = "from", required = false) Instant from,
+            @RequestParam(name = "to", required = false) Instant to
     ) {
+        var filter = new AuditFilter(UUID.fromString(orgId), action, resourceType, resourceId, actorUserId,
+                null, from, to);
+        return ResponseEntity.ok(page(filter, limit, cursor));
+    }
+
+    /**
+     * Like the listing, for rows whose metadata contains every {@code meta} term. A term is {@code path=value}, with
+     * dots in the path for nested objects: {@code meta=role=Admin}, {@code meta=email=a@example.com}. Values are
+     * matched as JSON strings.
+     */
+    @GetMapping("/orgs/{orgId}/search")
+    public ResponseEntity<AuditPageResponse> searchOrgAudit(
+            @PathVariable("orgId") String orgId,
+            @RequestParam(name = "meta") List<String> meta,
+            @RequestParam(name = "limit", defaultValue = "50") int limit,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "action", required = false) String action,
+            @RequestParam(name = "resourceType", required = false) String resourceType,
+            @RequestParam(name = "resourceId", required = false) String resourceId,
+            @RequestParam(name = "actorUserId", required = false) UUID actorUserId,
+            @RequestParam(name = "from", required = false) Instant from,
+            @RequestParam(name = "to", required = false) Instant to
+    ) {
+        var filter = new AuditFilter(UUID.fromString(orgId), action, resourceType, resourceId, actorUserId,
+                containment(meta), from, to);
+        return ResponseEntity.ok(page(filter, limit, cursor));
+    }
+
+    /**
+     * The whole filtered trail, oldest first, as NDJSON (one object per line, the same fields as a page item) or CSV.
+     * Rows go from a database cursor straight to the response, gzipped when the client accepts it, so memory does not
+     * grow with the export. Archived rows are merged in, in order, from their segments. A client that disconnects ends
+     * the export and releases its connection.
+     */
+    @GetMapping("/orgs/{orgId}/export")
+    public void exportOrgAudit(
+            @PathVariable("orgId") String orgId,
+            @RequestParam(name = "format", defaultValue = "ndjson") String format,
+            @RequestParam(name = "action", required = false) String action,
+            @RequestParam(name = "resourceType", required = false) String resourceType,
+            @RequestParam(name = "resourceId", required = false) String resourceId,
+            @RequestParam(name = "actorUserId", required = false) UUID actorUserId,
+            @RequestParam(name = "from", required = false) Instant from,
+            @RequestParam(name = "to", required = false) Instant to,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response
+    ) throws IOException {
+        AuditExportFormat fmt;
+        try {
+            fmt = AuditExportFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "format must be ndjson or csv");
+        }
+        var filter = new AuditFilter(UUID.fromString(orgId), action, resourceType, resourceId, actorUserId,
+                null, from, to);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+
+        response.setContentType(fmt.contentType + "; charset=utf-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"audit-" + orgId + "." + fmt.extension + "\"");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        long started = System.nanoTime();
+        long[] rows = {0};
+        String outcome = "completed";
+        // Fastest level: the default costs several times the CPU for a few percent smaller output.
+        OutputStream out = gzip
+                ? new GZIPOutputStream(response.getOutputStream(), 64 * 1024) {{ def.setLevel(Deflater.BEST_SPEED); }}
+                : response.getOutputStream();
+        try {
+            AuditExportFormat.RowWriter writer = fmt.open(out, json.getFactory());
+            audit.export(filter, r -> {
+                try {
+                    writer.write(r);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            });
+            writer.close();
+            if (out instanceof GZIPOutputStream z) z.finish();
+        } catch (UncheckedIOException | IOException e) {
+            // Nothing more can be sent; the cursor and its connection are already released.
+            outcome = "aborted";
+            log.debug("audit export for org {} aborted after {} rows: {}", orgId, rows[0], e.toString());
+        } catch (RuntimeException e) {
+            outcome = "failed";
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            Timer.builder("opencore.user.audit.export")
+                    .description("Audit exports, by how they ended")
+                    .tags("format", fmt.extension, "outcome", outcome)
+                    .register(meterRegistry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            Counter.builder("opencore.user.audit.export.rows")
+                    .description("Audit rows written by exports")
+                    .tag("format", fmt.extension)
+                    .register(meterRegistry)
+                    .increment(rows[0]);
+            log.info("audit export for org {}: {} {} rows in {} ms ({} rows/s)", orgId, outcome, rows[0],
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), rows[0] * 1_000_000_000L / Math.max(1, elapsed));
+        }
+    }
+
+    private AuditPageResponse page(AuditFilter filter, int limit, String cursor) {
         int clamped = Math.max(1, Math.min(limit, 200));
-        var page = audit.findAllByOrgId(
-                UUID.fromString(orgId),
-                PageRequest.of(0, clamped, Sort.by(Sort.Direction.DESC, "createdAt"))
-        );
+        Position after = cursor == null ? new Position(null, null) : Position.decode(cursor);
+
+        // One extra row says whether there is a next page without counting.
+        List<AuditRow> rows = audit.page(filter, after.createdAt(), after.id(), clamped + 1);
+        String next = null;
+        if (rows.size() > clamped) {
+            rows = rows.subList(0, clamped);
+            AuditRow last = rows.get(clamped - 1);
+            next = new Position(last.createdAt(), last.id()).encode();
+        }
+        return new AuditPageResponse(rows.stream().map(this::toDto).toList(), next);
+    }
+
+    // Folds path=value terms into the one JSON object the metadata has to contain.
+    private String containment(List<String> terms) {
+        ObjectNode root = json.createObjectNode();
+        for (String term : terms) {
+            int eq = term.indexOf('=');
+            String[] path = term.substring(0, Math.max(eq, 0)).split("\\.", -1);
+            if (eq <= 0 || Arrays.asList(path).contains("")) throw invalidTerm(term);
+            ObjectNode node = root;
+            for (int i = 0; i < path.length - 1; i++) {
+                JsonNode child = node.get(path[i]);
+                if (child == null) child = node.putObject(path[i]);
+                if (!(child instanceof ObjectNode o)) throw invalidTerm(term);
+                node = o;
+            }
+            if (node.has(path[path.length - 1])) throw invalidTerm(term);
+            node.put(path[path.length - 1], term.substring(eq + 1));
+        }
+        return root.toString();
+    }
 
-        var out = page.getContent().stream().map(this::toDto).toList();
-        return ResponseEntity.ok(out);
-    }
-
-    private Map<String, Object> toDto(AuditLogEntity e) {
-        return Map.of(
-                "id", e.id.toString(),
-                "orgId", e.orgId == null ? null : e.orgId.toString(),
-                "actorUserId", e.actorUserId == null ? null : e.actorUserId.toString(),
-                "action", e.action,
-                "resourceType", e.resourceType,
-                "resourceId", e.resourceId,
-                "ip", e.ip,
-                "metadataJson", e.metadataJson,
-                "createdAt", e.createdAt.toString()
+    private static ResponseStatusException invalidTerm(String term) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "meta must be path=value, got: " + term);
+    }
+
+    private AuditLogResponse toDto(AuditRow r) {
+        return new AuditLogResponse(
+                r.id().toString(),
+                r.orgId() == null ? null : r.orgId().toString(),
+                r.actorUserId() == null ? null : r.actorUserId().toString(),
+                r.action(),
+                r.resourceType(),
+                r.resourceId(),
+                r.ip(),
+                r.metadataJson(),
+                r.createdAt().toString()
         );
     }
+
+    // The opaque cursor: the last row's (created_at, id), base64url encoded.
+    private record Position(Instant createdAt, UUID id) {
+        String encode() {
+            String text = createdAt + "/" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Position decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("/");
+                if (parts.length == 2) return new Position(Instant.parse(parts[0]), UUID.fromString(parts[1]));
+            } catch (RuntimeException ignored) {
+                // Falls through to the 400 below.
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid cursor");
+        }
+    }
 }
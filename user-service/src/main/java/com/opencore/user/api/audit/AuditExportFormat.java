@@ -0,0 +1,122 @@
+package com.opencore.user.api.audit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.opencore.user.persistence.AuditRow;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/** Renderings of audit rows for the export endpoint, written straight to the response as each row arrives. */
+enum AuditExportFormat {
+    NDJSON("application/x-ndjson", "ndjson") {
+        @Override
+        RowWriter open(OutputStream out, JsonFactory json) throws IOException {
+            JsonGenerator g = json.createGenerator(out);
+            g.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            g.setPrettyPrinter(new MinimalPrettyPrinter(""));
+            return new RowWriter() {
+                @Override
+                public void write(AuditRow r) throws IOException {
+                    g.writeStartObject();
+                    g.writeStringField("id", r.id().toString());
+                    g.writeStringField("orgId", string(r.orgId()));
+                    g.writeStringField("actorUserId", string(r.actorUserId()));
+                    g.writeStringField("action", r.action());
+                    g.writeStringField("resourceType", r.resourceType());
+                    g.writeStringField("resourceId", r.resourceId());
+                    g.writeStringField("ip", r.ip());
+                    g.writeStringField("metadataJson", r.metadataJson());
+                    g.writeStringField("createdAt", r.createdAt().toString());
+                    g.writeEndObject();
+                    g.writeRaw('\n');
+                }
+
+                @Override
+                public void close() throws IOException {
+                    g.close();
+                }
+            };
+        }
+    },
+    CSV("text/csv", "csv") {
+        @Override
+        RowWriter open(OutputStream out, JsonFactory json) throws IOException {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192);
+            w.write("id,orgId,actorUserId,action,resourceType,resourceId,ip,metadataJson,createdAt\r\n");
+            return new RowWriter() {
+                @Override
+                public void write(AuditRow r) throws IOException {
+                    w.write(r.id().toString());
+                    w.write(',');
+                    field(w, string(r.orgId()));
+                    w.write(',');
+                    field(w, string(r.actorUserId()));
+                    w.write(',');
+                    field(w, r.action());
+                    w.write(',');
+                    field(w, r.resourceType());
+                    w.write(',');
+                    field(w, r.resourceId());
+                    w.write(',');
+                    field(w, r.ip());
+                    w.write(',');
+                    field(w, r.metadataJson());
+                    w.write(',');
+                    w.write(r.createdAt().toString());
+                    w.write("\r\n");
+                }
+
+                // Flushes what is buffered but leaves the response stream to the caller.
+                @Override
+                public void close() throws IOException {
+                    w.flush();
+                }
+            };
+        }
+    };
+
+    final String contentType;
+    final String extension;
+
+    AuditExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    abstract RowWriter open(OutputStream out, JsonFactory json) throws IOException;
+
+    interface RowWriter extends AutoCloseable {
+        void write(AuditRow r) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static String string(UUID id) {
+        return id == null ? null : id.toString();
+    }
+
+    // RFC 4180: quoted only when it has to be, with embedded quotes doubled. Null and empty both come out empty.
+    private static void field(Writer w, String value) throws IOException {
+        if (value == null) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            w.write(value);
+            return;
+        }
+        w.write('"');
+        w.write(value.replace("\"", "\"\""));
+        w.write('"');
+    }
+}
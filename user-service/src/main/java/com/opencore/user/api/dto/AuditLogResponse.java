@@ -0,0 +1,13 @@
+package com.opencore.user.api.dto;
+
+public record AuditLogResponse(
+        String id,
+        String orgId,
+        String actorUserId,
+        String action,
+        String resourceType,
+        String resourceId,
+        String ip,
+        String metadataJson,
+        String createdAt
+) {}
@@ -0,0 +1,8 @@
+package com.opencore.user.api.dto;
+
+import java.util.List;
+
+public record AuditPageResponse(
+        List<AuditLogResponse> items,
+        String nextCursor
+) {}
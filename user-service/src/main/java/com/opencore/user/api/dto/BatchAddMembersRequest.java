@@ -0,0 +1,7 @@
+package com.opencore.user.api.dto;
+
+import java.util.List;
+
+public record BatchAddMembersRequest(
+        List<BatchMember> members
+) {}
@@ -0,0 +1,13 @@
+package com.opencore.user.api.dto;
+
+import java.util.List;
+
+public record BatchAddMembersResponse(
+        int added,
+        int updated,
+        int unchanged,
+        int duplicate,
+        int invalid,
+        int userNotFound,
+        List<BatchMemberResult> results
+) {}
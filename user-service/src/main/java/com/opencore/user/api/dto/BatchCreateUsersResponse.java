@@ -0,0 +1,12 @@
+package com.opencore.user.api.dto;
+
+import java.util.List;
+
+public record BatchCreateUsersResponse(
+        int created,
+        int existing,
+        int duplicate,
+        int invalid,
+        int conflict,
+        List<BatchUserResult> results
+) {}
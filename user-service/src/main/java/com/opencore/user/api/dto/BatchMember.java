@@ -0,0 +1,6 @@
+package com.opencore.user.api.dto;
+
+public record BatchMember(
+        String userId,
+        String role
+) {}
@@ -0,0 +1,8 @@
+package com.opencore.user.api.dto;
+
+public record BatchMemberResult(
+        int index,
+        String userId,
+        String role,
+        String status
+) {}
@@ -0,0 +1,8 @@
+package com.opencore.user.api.dto;
+
+public record BatchUserResult(
+        int index,
+        String email,
+        String userId,
+        String status
+) {}
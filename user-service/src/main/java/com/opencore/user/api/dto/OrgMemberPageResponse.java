@@ -0,0 +1,8 @@
+package com.opencore.user.api.dto;
+
+import java.util.List;
+
+public record OrgMemberPageResponse(
+        List<OrgMemberResponse> items,
+        String nextCursor
+) {}
@@ -0,0 +1,8 @@
+package com.opencore.user.api.dto;
+
+public record OrgMemberResponse(
+        String userId,
+        String email,
+        String role,
+        String createdAt
+) {}
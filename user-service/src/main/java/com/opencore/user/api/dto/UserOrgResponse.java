@@ -0,0 +1,7 @@
+package com.opencore.user.api.dto;
+
+public record UserOrgResponse(
+        String orgId,
+        String orgName,
+        String role
+) {}
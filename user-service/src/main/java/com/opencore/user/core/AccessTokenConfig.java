@@ -0,0 +1,25 @@
+package com.opencore.user.core;
+
+import com.opencore.token.AccessTokenFilter;
+import com.opencore.token.AccessTokenVerifier;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration
+public class AccessTokenConfig {
+    @Bean
+    public AccessTokenVerifier accessTokenVerifier(OpenCoreJwtProperties props) {
+        return new AccessTokenVerifier(props.issuer(), props.secret());
+    }
+
+    // Runs ahead of the request context filter so the actor comes from the verified token.
+    @Bean
+    public FilterRegistrationBean<AccessTokenFilter> accessTokenFilter(AccessTokenVerifier verifier, OpenCoreJwtProperties props) {
+        FilterRegistrationBean<AccessTokenFilter> reg = new FilterRegistrationBean<>(new AccessTokenFilter(verifier, props.required()));
+        reg.addUrlPatterns("/v1/*");
+        reg.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return reg;
+    }
+}
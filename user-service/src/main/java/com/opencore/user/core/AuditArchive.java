@@ -0,0 +1,381 @@
+package com.opencore.user.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencore.user.persistence.AuditFilter;
+import com.opencore.user.persistence.AuditRow;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Audit rows moved out of Postgres by {@link AuditArchiver}: one {@link AuditSegment} file per org and month, at
+ * {@code <directory>/<orgId>/<yyyy-MM>.seg}. Reads take the same filters as {@link AuditFilter} queries and return
+ * rows in the same order.
+ */
+@Component
+public class AuditArchive {
+    private static final String SUFFIX = ".seg";
+
+    private final Path root;
+    private final ObjectMapper json;
+
+    public AuditArchive(OpenCoreAuditProperties props, ObjectMapper json) {
+        this.root = Path.of(props.archive().directory());
+        this.json = json;
+    }
+
+    /** Exclusive end of the org's newest archived month; null when nothing of it is archived. */
+    public Instant end(UUID orgId) {
+        List<YearMonth> months = months(orgId);
+        return months.isEmpty() ? null : start(months.get(months.size() - 1).plusMonths(1));
+    }
+
+    /** Like {@code AuditRowReader.page}: up to {@code limit} archived rows, newest first, older than the position. */
+    public List<AuditRow> page(AuditFilter f, Instant beforeCreatedAt, UUID beforeId, int limit) {
+        Match match = new Match(f, beforeCreatedAt, beforeId);
+        List<YearMonth> months = months(f.orgId());
+        List<AuditRow> out = new ArrayList<>(Math.min(limit, 1024));
+        for (int m = months.size() - 1; m >= 0; m--) {
+            if (!match.month(months.get(m))) continue;
+            AuditSegment.Reader segment = open(f.orgId(), months.get(m));
+            if (!match.segment(segment)) continue;
+            AuditSegment.Block[] blocks = segment.blocks();
+            for (int b = blocks.length - 1; b >= 0; b--) {
+                if (!match.block(blocks[b])) continue;
+                AuditSegment.Rows rows = segment.rows(blocks[b]);
+                if (!match.values(rows)) continue;
+                for (int i = rows.size() - 1; i >= 0; i--) {
+                    if (!match.row(rows, i)) continue;
+                    out.add(rows.row(f.orgId(), i));
+                    if (out.size() == limit) return out;
+                }
+            }
+        }
+        return out;
+    }
+
+    /** Every archived row matching the filter, oldest first, read a block at a time. */
+    public Iterator<AuditRow> scan(AuditFilter f) {
+        return new Scan(f.orgId(), months(f.orgId()), new Match(f, null, null));
+    }
+
+    /**
+     * Starts rewriting one org-month segment. Rows added, oldest first, are merged with the ones already archived
+     * for that month; the new file replaces the old one on commit.
+     */
+    MonthWriter rewrite(UUID orgId, YearMonth month) throws IOException {
+        return new MonthWriter(orgId, month);
+    }
+
+    /** Deletes every segment for months before {@code cutoff}; returns how many. */
+    int expire(YearMonth cutoff) throws IOException {
+        if (!Files.isDirectory(root)) return 0;
+        int deleted = 0;
+        try (Stream<Path> orgs = Files.list(root)) {
+            for (Path dir : orgs.filter(Files::isDirectory).toList()) {
+                for (YearMonth month : months(dir)) {
+                    if (!month.isBefore(cutoff)) break;
+                    Files.delete(dir.resolve(month + SUFFIX));
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    List<YearMonth> months(UUID orgId) {
+        return months(root.resolve(orgId.toString()));
+    }
+
+    private static List<YearMonth> months(Path dir) {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(SUFFIX))
+                    .map(n -> {
+                        try {
+                            return YearMonth.parse(n.substring(0, n.length() - SUFFIX.length()));
+                        } catch (DateTimeParseException e) {
+                            return null;
+                        }
+                    })
+                    .filter(m -> m != null)
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private AuditSegment.Reader open(UUID orgId, YearMonth month) {
+        try {
+            return AuditSegment.Reader.open(root.resolve(orgId.toString()).resolve(month + SUFFIX));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Instant start(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    /** The filter, and the page position if any, checked at month, segment, block and row level. */
+    private final class Match {
+        private final AuditFilter f;
+        private final long from;
+        private final long to;
+        private final UUID beforeId;
+        private final JsonNode metadata;
+        private final List<String> needles = new ArrayList<>();
+        // Column and bytes pairs every matching row has somewhere in its block.
+        private final List<Object[]> blockValues = new ArrayList<>();
+
+        Match(AuditFilter f, Instant beforeCreatedAt, UUID beforeId) {
+            this.f = f;
+            this.from = f.from() == null ? Long.MIN_VALUE : AuditSegment.micros(f.from());
+            long to = f.to() == null ? Long.MAX_VALUE : AuditSegment.micros(f.to());
+            // Rows at the cursor's own timestamp are still possible, decided on id below.
+            if (beforeCreatedAt != null) to = Math.min(to, AuditSegment.micros(beforeCreatedAt) + 1);
+            this.to = to;
+            this.beforeId = beforeCreatedAt == null ? null : beforeId;
+            try {
+                this.metadata = f.metadata() == null ? null : json.readTree(f.metadata());
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("metadata filter is not JSON", e);
+            }
+            if (metadata != null) collectNeedles(metadata);
+            if (f.action() != null) blockValues.add(new Object[] {AuditSegment.ACTION, utf8(f.action())});
+            if (f.resourceType() != null) blockValues.add(new Object[] {AuditSegment.RESOURCE_TYPE, utf8(f.resourceType())});
+            if (f.resourceId() != null) blockValues.add(new Object[] {AuditSegment.RESOURCE_ID, utf8(f.resourceId())});
+            if (f.actorUserId() != null) {
+                blockValues.add(new Object[] {AuditSegment.ACTOR, AuditSegment.bytes(f.actorUserId())});
+            }
+            for (String needle : needles) blockValues.add(new Object[] {AuditSegment.METADATA, utf8(needle)});
+        }
+
+        boolean month(YearMonth month) {
+            return AuditSegment.micros(start(month)) < to && AuditSegment.micros(start(month.plusMonths(1))) > from;
+        }
+
+        boolean segment(AuditSegment.Reader segment) {
+            return (f.action() == null || segment.hasAction(f.action()))
+                    && (f.resourceType() == null || segment.hasResourceType(f.resourceType()));
+        }
+
+        boolean block(AuditSegment.Block block) {
+            return block.first() < to && block.last() >= from;
+        }
+
+        // Rules out blocks that cannot hold a match before any row is decoded; rare values skip most blocks here.
+        boolean values(AuditSegment.Rows rows) {
+            for (Object[] v : blockValues) {
+                if (!rows.mayContain((int) v[0], (byte[]) v[1])) return false;
+            }
+            return true;
+        }
+
+        boolean row(AuditSegment.Rows rows, int i) {
+            long t = rows.micros(i);
+            if (t < from || t >= to) return false;
+            if (beforeId != null && t == to - 1 && AuditRow.compareIds(rows.id(i), beforeId) >= 0) return false;
+            if (f.action() != null && !f.action().equals(rows.string(AuditSegment.ACTION, i))) return false;
+            if (f.resourceType() != null && !f.resourceType().equals(rows.string(AuditSegment.RESOURCE_TYPE, i))) {
+                return false;
+            }
+            if (f.resourceId() != null && !f.resourceId().equals(rows.string(AuditSegment.RESOURCE_ID, i))) return false;
+            if (f.actorUserId() != null && !f.actorUserId().equals(rows.actor(i))) return false;
+            return metadata == null || metadata(rows.string(AuditSegment.METADATA, i));
+        }
+
+        // jsonb's @>, as far as object containment of strings goes. Checking the raw text for each quoted value
+        // first skips parsing rows that cannot match.
+        private boolean metadata(String text) {
+            if (text == null) return false;
+            for (String needle : needles) {
+                if (!text.contains(needle)) return false;
+            }
+            try {
+                return contains(json.readTree(text), metadata);
+            } catch (JsonProcessingException e) {
+                return false;
+            }
+        }
+
+        private void collectNeedles(JsonNode node) {
+            if (node.isContainerNode()) {
+                node.forEach(this::collectNeedles);
+            } else if (node.isTextual() && node.toString().indexOf('\\') < 0) {
+                // Escapes are where Jackson's and Postgres' text could differ; those values only get the full check.
+                needles.add(node.toString());
+            }
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean contains(JsonNode have, JsonNode want) {
+        if (want.isObject()) {
+            if (!have.isObject()) return false;
+            for (var it = want.fields(); it.hasNext(); ) {
+                var field = it.next();
+                JsonNode value = have.get(field.getKey());
+                if (value == null || !contains(value, field.getValue())) return false;
+            }
+            return true;
+        }
+        if (want.isArray()) {
+            if (!have.isArray()) return false;
+            for (JsonNode w : want) {
+                boolean found = false;
+                for (JsonNode h : have) {
+                    if (contains(h, w)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) return false;
+            }
+            return true;
+        }
+        if (want.isNumber() && have.isNumber()) return want.decimalValue().compareTo(have.decimalValue()) == 0;
+        return want.equals(have);
+    }
+
+    /** Oldest first across the given months, inflating one block at a time. */
+    private final class Scan implements Iterator<AuditRow> {
+        private final UUID orgId;
+        private final List<YearMonth> months;
+        private final Match match;
+        private int month = -1;
+        private AuditSegment.Reader segment;
+        private int block;
+        private AuditSegment.Rows rows;
+        private int row;
+        private AuditRow next;
+
+        Scan(UUID orgId, List<YearMonth> months, Match match) {
+            this.orgId = orgId;
+            this.months = months;
+            this.match = match;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (rows != null && row < rows.size()) {
+                    int i = row++;
+                    if (match.row(rows, i)) next = rows.row(orgId, i);
+                } else if (segment != null && block < segment.blocks().length) {
+                    AuditSegment.Block b = segment.blocks()[block++];
+                    rows = match.block(b) ? segment.rows(b) : null;
+                    if (rows != null && !match.values(rows)) rows = null;
+                    row = 0;
+                } else if (month + 1 < months.size()) {
+                    YearMonth m = months.get(++month);
+                    segment = match.month(m) ? open(orgId, m) : null;
+                    if (segment != null && !match.segment(segment)) segment = null;
+                    block = 0;
+                    rows = null;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public AuditRow next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            AuditRow r = next;
+            next = null;
+            return r;
+        }
+    }
+
+    /** See {@link #rewrite}. Closing without commit() leaves the archived month as it was. */
+    final class MonthWriter implements Closeable {
+        private final Path target;
+        private final Path temp;
+        private final Iterator<AuditRow> archived;
+        private final AuditSegment.Writer out;
+        private AuditRow pending;
+        private int added;
+        private boolean committed;
+
+        private MonthWriter(UUID orgId, YearMonth month) throws IOException {
+            Path dir = root.resolve(orgId.toString());
+            Files.createDirectories(dir);
+            this.target = dir.resolve(month + SUFFIX);
+            this.temp = dir.resolve(month + SUFFIX + ".tmp");
+            AuditFilter all = new AuditFilter(orgId, null, null, null, null, null, null, null);
+            this.archived = Files.exists(target) ? new Scan(orgId, List.of(month), new Match(all, null, null))
+                    : List.<AuditRow>of().iterator();
+            this.pending = archived.hasNext() ? archived.next() : null;
+            // Left over from a rewrite that never committed.
+            Files.deleteIfExists(temp);
+            this.out = new AuditSegment.Writer(temp);
+        }
+
+        /** Adds a row; rows must come oldest first. One already archived is kept once. */
+        void add(AuditRow row) throws IOException {
+            while (pending != null && AuditRow.ORDER.compare(pending, row) < 0) {
+                out.add(pending);
+                pending = archived.hasNext() ? archived.next() : null;
+            }
+            if (pending != null && AuditRow.ORDER.compare(pending, row) == 0) {
+                pending = archived.hasNext() ? archived.next() : null;
+            }
+            out.add(row);
+            added++;
+        }
+
+        int added() {
+            return added;
+        }
+
+        int rows() {
+            return out.rows();
+        }
+
+        long bytes() {
+            return out.bytes();
+        }
+
+        void commit() throws IOException {
+            while (pending != null) {
+                out.add(pending);
+                pending = archived.hasNext() ? archived.next() : null;
+            }
+            out.finish();
+            out.close();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            if (!committed) Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.opencore.user.core;
+
+import com.opencore.user.persistence.AuditFilter;
+import com.opencore.user.persistence.AuditRowReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves audit rows older than the hot window out of Postgres into the {@link AuditArchive}, one org-month at a time,
+ * on startup and every few hours when opencore.audit.archive.enabled is set.
+ *
+ * Each org-month is read and deleted in one repeatable-read transaction, with the segment written and renamed into
+ * place in between, so the delete removes exactly the rows that were archived and nothing inserted meanwhile. A
+ * failure after the rename leaves the rows in both places until the next run merges them again. Replicas take turns
+ * through an advisory lock, which only works if they share the archive directory.
+ */
+@Component
+public class AuditArchiver {
+    private static final Logger log = LoggerFactory.getLogger(AuditArchiver.class);
+
+    private static final long LOCK_KEY = 0x6f63_6175_6461_7263L;
+    private static final long INTERVAL_HOURS = 6;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final AuditRowReader rows;
+    private final AuditArchive archive;
+    private final OpenCoreAuditProperties props;
+    private final Counter archived;
+    private final ScheduledExecutorService scheduler;
+
+    public AuditArchiver(
+            JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager,
+            AuditRowReader rows,
+            AuditArchive archive,
+            OpenCoreAuditProperties props,
+            MeterRegistry meterRegistry
+    ) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        tx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.rows = rows;
+        this.archive = archive;
+        this.props = props;
+        this.archived = Counter.builder("opencore.user.audit.archive.rows")
+                .description("Audit rows moved from Postgres to the archive")
+                .register(meterRegistry);
+        if (props.archive().enabled()) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "user-audit-archiver");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::archiveQuietly, 0, INTERVAL_HOURS, TimeUnit.HOURS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    void archive() throws IOException {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        YearMonth horizon = current.minusMonths(props.archive().hotMonths());
+        // Rows without an org are never read through the archive; they stay for partition retention to drop.
+        List<Oldest> orgs = jdbc.query("""
+                        select org_id, min(created_at) from user_service.audit_logs
+                        where org_id is not null and created_at < ? group by org_id
+                        """,
+                (rs, i) -> new Oldest(rs.getObject(1, UUID.class), rs.getTimestamp(2).toInstant()),
+                Timestamp.from(start(horizon)));
+
+        long started = System.nanoTime();
+        long moved = 0;
+        long bytes = 0;
+        for (Oldest org : orgs) {
+            for (YearMonth m = YearMonth.from(org.createdAt().atZone(ZoneOffset.UTC)); m.isBefore(horizon); m = m.plusMonths(1)) {
+                long[] result = archive(org.orgId(), m);
+                moved += result[0];
+                bytes += result[1];
+            }
+        }
+        if (moved > 0) {
+            log.info("archived {} audit rows of {} orgs into {} bytes of segments in {} ms", moved, orgs.size(), bytes,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+
+        int retention = props.partitions().retentionMonths();
+        if (retention > 0) {
+            int expired = archive.expire(current.minusMonths(retention));
+            if (expired > 0) log.info("deleted {} archived audit segments past retention", expired);
+        }
+    }
+
+    // Returns rows moved and the rewritten segment's size.
+    private long[] archive(UUID orgId, YearMonth month) {
+        return tx.execute(status -> {
+            if (!Boolean.TRUE.equals(jdbc.queryForObject("select pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY))) {
+                return new long[] {0, 0};
+            }
+            Instant from = start(month);
+            Instant to = start(month.plusMonths(1));
+            try (AuditArchive.MonthWriter segment = archive.rewrite(orgId, month)) {
+                rows.export(new AuditFilter(orgId, null, null, null, null, null, from, to), r -> {
+                    try {
+                        segment.add(r);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (segment.added() == 0) return new long[] {0, 0};
+                segment.commit();
+                int deleted = jdbc.update("delete from user_service.audit_logs where org_id = ? and created_at >= ? and created_at < ?",
+                        orgId, Timestamp.from(from), Timestamp.from(to));
+                archived.increment(deleted);
+                log.debug("archived {} audit rows of org {} for {} ({} rows, {} bytes in segment)", deleted, orgId, month,
+                        segment.rows(), segment.bytes());
+                return new long[] {deleted, segment.bytes()};
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void archiveQuietly() {
+        try {
+            archive();
+        } catch (Exception e) {
+            log.warn("audit archiving failed", e);
+        }
+    }
+
+    private static Instant start(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private record Oldest(UUID orgId, Instant createdAt) {}
+}
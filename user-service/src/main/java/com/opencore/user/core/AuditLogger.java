@@ -1,34 +1,116 @@
 package com.opencore.user.core;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.opencore.user.persistence.AuditLogEntity;
 import com.opencore.user.persistence.AuditLogRepository;
+import com.opencore.user.persistence.AuditRow;
+import com.opencore.user.persistence.AuditRowWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.Instant;
-import java.util.UUID;
+import java.util.List;
 
+/**
+ * Audit rows are written inline by default: in the statement that makes the change, or through JPA for log(). With
+ * opencore.audit.writeBehind they are queued once the change commits and written in batches by a background writer.
+ */
 @Component
 public class AuditLogger {
     private final AuditLogRepository audit;
+    private final AuditWriteBehind writeBehind;
+    private final IdGenerator ids;
 
-    public AuditLogger(AuditLogRepository audit) {
+    public AuditLogger(
+            AuditLogRepository audit,
+            AuditRowWriter rowWriter,
+            OpenCoreAuditProperties props,
+            ObjectMapper json,
+            IdGenerator ids,
+            MeterRegistry meterRegistry
+    ) {
         this.audit = audit;
+        this.ids = ids;
+        if (props.writeBehind()) {
+            this.writeBehind = new AuditWriteBehind(props, rowWriter, json);
+            writeBehind.bindTo(meterRegistry);
+            writeBehind.start();
+        } else {
+            this.writeBehind = null;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
     }
 
     public void log(String action, String resourceType, String resourceId, String metadataJson) {
-        RequestContext ctx = RequestContextHolder.get();
+        AuditRow row = row(action, resourceType, resourceId, metadataJson);
+        if (writeBehind != null) {
+            writeBehind(List.of(row));
+            return;
+        }
 
         AuditLogEntity e = new AuditLogEntity();
-        e.id = UUID.randomUUID();
-        e.orgId = ctx == null ? null : ctx.orgId();
-        e.actorUserId = ctx == null ? null : ctx.actorUserId();
-        e.action = action;
-        e.resourceType = resourceType;
-        e.resourceId = resourceId;
-        e.ip = ctx == null ? null : ctx.ip();
-        e.metadataJson = metadataJson;
-        e.createdAt = Instant.now();
+        e.id = row.id();
+        e.orgId = row.orgId();
+        e.actorUserId = row.actorUserId();
+        e.action = row.action();
+        e.resourceType = row.resourceType();
+        e.resourceId = row.resourceId();
+        e.ip = row.ip();
+        e.metadataJson = row.metadataJson();
+        e.createdAt = row.createdAt();
 
         audit.save(e);
     }
+
+    /** Builds the row log() would write, for callers that insert it in the same statement as the change. */
+    public AuditRow row(String action, String resourceType, String resourceId, String metadataJson) {
+        RequestContext ctx = RequestContextHolder.get();
+        return new AuditRow(
+                ids.next(),
+                ctx == null ? null : ctx.orgId(),
+                ctx == null ? null : ctx.actorUserId(),
+                action,
+                resourceType,
+                resourceId,
+                ctx == null ? null : ctx.ip(),
+                metadataJson,
+                Instant.now()
+        );
+    }
+
+    public boolean writesBehind() {
+        return writeBehind != null;
+    }
+
+    /** The row for the change's own statement to insert, or null when rows are written behind. */
+    public AuditRow inline(AuditRow row) {
+        return writeBehind == null ? row : null;
+    }
+
+    /**
+     * Queues rows for the write-behind writer once the current transaction commits; they are dropped if it rolls
+     * back. Does nothing when rows are written inline.
+     */
+    public void writeBehind(List<AuditRow> rows) {
+        if (writeBehind == null || rows.isEmpty()) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            for (AuditRow r : rows) writeBehind.enqueue(r);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (AuditRow r : rows) writeBehind.enqueue(r);
+            }
+        });
+    }
 }
@@ -0,0 +1,120 @@
+package com.opencore.user.core;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps audit_logs' monthly partitions ahead of the clock and applies retention, on startup and every few hours.
+ *
+ * Months already covered by a partition (including the legacy one for everything before partitioning) are skipped.
+ * Replicas share the work through an advisory lock; whoever misses it skips that run.
+ */
+@Component
+public class AuditPartitionMaintainer {
+    private static final Logger log = LoggerFactory.getLogger(AuditPartitionMaintainer.class);
+
+    private static final long LOCK_KEY = 0x6f63_6175_6470_6172L;
+    private static final long INTERVAL_HOURS = 6;
+
+    private static final String PARTITIONS = """
+            select c.relname,
+                   cast((regexp_match(pg_get_expr(c.relpartbound, c.oid), 'FROM \\(''([^'']+)''\\)'))[1] as timestamptz),
+                   cast((regexp_match(pg_get_expr(c.relpartbound, c.oid), 'TO \\(''([^'']+)''\\)'))[1] as timestamptz)
+            from pg_inherits i join pg_class c on c.oid = i.inhrelid
+            where i.inhparent = 'user_service.audit_logs'::regclass
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final OpenCoreAuditProperties.Partitions props;
+    private final ScheduledExecutorService scheduler;
+
+    public AuditPartitionMaintainer(JdbcTemplate jdbc, PlatformTransactionManager transactionManager, OpenCoreAuditProperties props) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.props = props.partitions();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-audit-partitions");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::maintainQuietly, 0, INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    void maintain() {
+        tx.executeWithoutResult(status -> {
+            if (!Boolean.TRUE.equals(jdbc.queryForObject("select pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY))) {
+                return;
+            }
+            // DDL here waits for queries on audit_logs; give up rather than queue writes behind it.
+            jdbc.execute("set local lock_timeout = '5s'");
+            List<Partition> existing = jdbc.query(PARTITIONS, (rs, i) -> new Partition(
+                    rs.getString(1),
+                    rs.getTimestamp(2) == null ? null : rs.getTimestamp(2).toInstant(),
+                    rs.getTimestamp(3) == null ? null : rs.getTimestamp(3).toInstant()
+            ));
+
+            YearMonth current = YearMonth.now(ZoneOffset.UTC);
+            for (int i = 0; i <= props.premakeMonths(); i++) {
+                YearMonth month = current.plusMonths(i);
+                Instant from = start(month);
+                Instant to = start(month.plusMonths(1));
+                if (existing.stream().anyMatch(p -> p.overlaps(from, to))) continue;
+                String name = "audit_logs_p%04d%02d".formatted(month.getYear(), month.getMonthValue());
+                jdbc.execute("create table user_service.%s partition of user_service.audit_logs for values from ('%s') to ('%s')"
+                        .formatted(name, from, to));
+                log.info("created audit partition {} [{}, {})", name, from, to);
+            }
+
+            if (props.retentionMonths() <= 0) return;
+            Instant cutoff = start(current.minusMonths(props.retentionMonths()));
+            for (Partition p : existing) {
+                if (p.to() == null || p.to().isAfter(cutoff)) continue;
+                if (props.expired() == OpenCoreAuditProperties.Expired.DETACH) {
+                    jdbc.execute("alter table user_service.audit_logs detach partition user_service." + p.name());
+                    log.info("detached audit partition {} (rows before {})", p.name(), p.to());
+                } else {
+                    jdbc.execute("drop table user_service." + p.name());
+                    log.info("dropped audit partition {} (rows before {})", p.name(), p.to());
+                }
+            }
+        });
+    }
+
+    private void maintainQuietly() {
+        try {
+            maintain();
+        } catch (Exception e) {
+            log.warn("audit partition maintenance failed", e);
+        }
+    }
+
+    private static Instant start(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    // from is null for a MINVALUE lower bound.
+    private record Partition(String name, Instant from, Instant to) {
+        boolean overlaps(Instant start, Instant end) {
+            return (from == null || from.isBefore(end)) && (to == null || to.isAfter(start));
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.opencore.user.core;
+
+import com.opencore.user.persistence.AuditRow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One org's archived audit rows for one month, oldest first. Immutable once written: an update writes a new file.
+ *
+ * Rows are stored in blocks, and each block column by column, every column deflated on its own: timestamps as
+ * deltas, strings length-prefixed. The footer is the segment's index: each block's row count, time range and column
+ * positions, plus the distinct actions and resource types in the whole segment. Reads map the file, skip segments
+ * and blocks the index rules out, and inflate only the columns a filter looks at.
+ *
+ * Layout: MAGIC VERSION, blocks, footer, footer length, MAGIC. Numbers are big-endian.
+ */
+final class AuditSegment {
+    private static final int MAGIC = 0x4f434153;
+    private static final int VERSION = 1;
+
+    // Measured at 1024 to 16384 on 2M synthetic rows: size stayed within 1% (random uuids are most of every row), while
+    // a page read, which inflates a whole block, went from 0.7 ms at 2048 to 8.8 ms at 16384.
+    private static final int BLOCK_ROWS = 2048;
+
+    static final int CREATED_AT = 0;
+    static final int ID = 1;
+    static final int ACTOR = 2;
+    static final int ACTION = 3;
+    static final int RESOURCE_TYPE = 4;
+    static final int RESOURCE_ID = 5;
+    static final int IP = 6;
+    static final int METADATA = 7;
+    private static final int COLUMNS = 8;
+
+    private AuditSegment() {}
+
+    /** Block index entry; times are epoch microseconds, both inclusive. */
+    record Block(int rows, long first, long last, int[] offset, int[] packed, int[] raw) {}
+
+    /** Writes rows, which must come oldest first, into a new segment file. */
+    static final class Writer implements Closeable {
+        private final FileChannel out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private final List<AuditRow> pending = new ArrayList<>(BLOCK_ROWS);
+        private final List<Block> blocks = new ArrayList<>();
+        private final Set<String> actions = new TreeSet<>();
+        private final Set<String> resourceTypes = new TreeSet<>();
+        private long position;
+        private int rows;
+
+        Writer(Path file) throws IOException {
+            this.out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            write(ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).flip());
+        }
+
+        void add(AuditRow row) throws IOException {
+            pending.add(row);
+            rows++;
+            if (row.action() != null) actions.add(row.action());
+            if (row.resourceType() != null) resourceTypes.add(row.resourceType());
+            if (pending.size() == BLOCK_ROWS) flushBlock();
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        long bytes() {
+            return position;
+        }
+
+        /** Writes the index and forces the file to disk. */
+        void finish() throws IOException {
+            flushBlock();
+            Column footer = new Column();
+            footer.writeInt(rows);
+            footer.writeInt(blocks.size());
+            for (Block b : blocks) {
+                footer.writeInt(b.rows());
+                footer.writeLong(b.first());
+                footer.writeLong(b.last());
+                for (int c = 0; c < COLUMNS; c++) {
+                    footer.writeInt(b.offset()[c]);
+                    footer.writeInt(b.packed()[c]);
+                    footer.writeInt(b.raw()[c]);
+                }
+            }
+            footer.writeStrings(actions);
+            footer.writeStrings(resourceTypes);
+            write(ByteBuffer.wrap(footer.toByteArray()));
+            write(ByteBuffer.allocate(8).putInt(footer.size()).putInt(MAGIC).flip());
+            out.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            out.close();
+        }
+
+        private void flushBlock() throws IOException {
+            if (pending.isEmpty()) return;
+            int[] offset = new int[COLUMNS];
+            int[] packed = new int[COLUMNS];
+            int[] raw = new int[COLUMNS];
+            for (int c = 0; c < COLUMNS; c++) {
+                byte[] bytes = encode(c);
+                raw[c] = bytes.length;
+                offset[c] = Math.toIntExact(position);
+                packed[c] = deflate(bytes);
+            }
+            blocks.add(new Block(pending.size(), micros(pending.get(0).createdAt()),
+                    micros(pending.get(pending.size() - 1).createdAt()), offset, packed, raw));
+            pending.clear();
+        }
+
+        private byte[] encode(int column) {
+            Column col = new Column();
+            long previous = 0;
+            for (AuditRow r : pending) {
+                switch (column) {
+                    case CREATED_AT -> {
+                        long t = micros(r.createdAt());
+                        col.writeVarLong(t - previous);
+                        previous = t;
+                    }
+                    case ID -> col.writeUuid(r.id());
+                    case ACTOR -> {
+                        col.write(r.actorUserId() == null ? 0 : 1);
+                        if (r.actorUserId() != null) col.writeUuid(r.actorUserId());
+                    }
+                    case ACTION -> col.writeString(r.action());
+                    case RESOURCE_TYPE -> col.writeString(r.resourceType());
+                    case RESOURCE_ID -> col.writeString(r.resourceId());
+                    case IP -> col.writeString(r.ip());
+                    case METADATA -> col.writeString(r.metadataJson());
+                    default -> throw new IllegalArgumentException("column " + column);
+                }
+            }
+            return col.toByteArray();
+        }
+
+        private int deflate(byte[] bytes) throws IOException {
+            deflater.reset();
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] buf = new byte[Math.max(64, bytes.length / 2)];
+            int total = 0;
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                write(ByteBuffer.wrap(buf, 0, n));
+                total += n;
+            }
+            return total;
+        }
+
+        private void write(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) position += out.write(buf);
+            if (position > Integer.MAX_VALUE) throw new IOException("audit segment over 2 GiB");
+        }
+    }
+
+    /** A segment file mapped read-only. The mapping outlives the file being replaced or deleted. */
+    static final class Reader {
+        private final ByteBuffer data;
+        private final Block[] blocks;
+        private final Set<String> actions;
+        private final Set<String> resourceTypes;
+
+        private Reader(ByteBuffer data, Block[] blocks, Set<String> actions, Set<String> resourceTypes) {
+            this.data = data;
+            this.blocks = blocks;
+            this.actions = actions;
+            this.resourceTypes = resourceTypes;
+        }
+
+        static Reader open(Path file) throws IOException {
+            ByteBuffer data;
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            }
+            int size = data.limit();
+            if (size < 16 || data.getInt(0) != MAGIC || data.getInt(size - 4) != MAGIC) {
+                throw new IOException("not an audit segment: " + file);
+            }
+            if (data.getInt(4) != VERSION) throw new IOException("unsupported audit segment version: " + file);
+            int footerSize = data.getInt(size - 8);
+            ByteBuffer footer = data.slice(size - 8 - footerSize, footerSize);
+            footer.getInt();
+            Block[] blocks = new Block[footer.getInt()];
+            for (int i = 0; i < blocks.length; i++) {
+                int rows = footer.getInt();
+                long first = footer.getLong();
+                long last = footer.getLong();
+                int[] offset = new int[COLUMNS];
+                int[] packed = new int[COLUMNS];
+                int[] raw = new int[COLUMNS];
+                for (int c = 0; c < COLUMNS; c++) {
+                    offset[c] = footer.getInt();
+                    packed[c] = footer.getInt();
+                    raw[c] = footer.getInt();
+                }
+                blocks[i] = new Block(rows, first, last, offset, packed, raw);
+            }
+            return new Reader(data, blocks, readStrings(footer), readStrings(footer));
+        }
+
+        Block[] blocks() {
+            return blocks;
+        }
+
+        boolean hasAction(String action) {
+            return actions.contains(action);
+        }
+
+        boolean hasResourceType(String resourceType) {
+            return resourceTypes.contains(resourceType);
+        }
+
+        Rows rows(Block block) {
+            return new Rows(this, block);
+        }
+
+        private byte[] inflate(Block block, int column) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data.slice(block.offset()[column], block.packed()[column]));
+                byte[] out = new byte[block.raw()[column]];
+                int n = 0;
+                while (n < out.length) {
+                    int read = inflater.inflate(out, n, out.length - n);
+                    if (read == 0 && (inflater.finished() || inflater.needsInput())) break;
+                    n += read;
+                }
+                if (n != out.length) throw new IllegalStateException("truncated audit segment column");
+                return out;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("corrupt audit segment column", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /** One block's rows; each column is inflated the first time it is asked for, and decoded the first time a value is. */
+    static final class Rows {
+        private final Reader reader;
+        private final Block block;
+        private final byte[][] raw = new byte[COLUMNS][];
+        private final Object[] columns = new Object[COLUMNS];
+        private long[] createdAt;
+
+        private Rows(Reader reader, Block block) {
+            this.reader = reader;
+            this.block = block;
+        }
+
+        int size() {
+            return block.rows();
+        }
+
+        /**
+         * False when {@code value} appears nowhere in the column's bytes, so no row in the block can equal it: a
+         * string's UTF-8, or a uuid's 16 bytes. Costs an inflate and a byte search, no decoding.
+         */
+        boolean mayContain(int column, byte[] value) {
+            byte[] bytes = raw(column);
+            outer:
+            for (int i = 0, last = bytes.length - value.length; i <= last; i++) {
+                for (int j = 0; j < value.length; j++) {
+                    if (bytes[i + j] != value[j]) continue outer;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        long micros(int i) {
+            if (createdAt == null) {
+                long[] values = new long[block.rows()];
+                ByteBuffer in = ByteBuffer.wrap(raw(CREATED_AT));
+                long t = 0;
+                for (int r = 0; r < values.length; r++) {
+                    t += readVarLong(in);
+                    values[r] = t;
+                }
+                createdAt = values;
+            }
+            return createdAt[i];
+        }
+
+        Instant createdAt(int i) {
+            return instant(micros(i));
+        }
+
+        UUID id(int i) {
+            return uuids(ID)[i];
+        }
+
+        UUID actor(int i) {
+            return uuids(ACTOR)[i];
+        }
+
+        String string(int column, int i) {
+            String[] values = (String[]) columns[column];
+            if (values == null) {
+                values = new String[block.rows()];
+                ByteBuffer in = ByteBuffer.wrap(raw(column));
+                for (int r = 0; r < values.length; r++) values[r] = readString(in);
+                columns[column] = values;
+            }
+            return values[i];
+        }
+
+        AuditRow row(UUID orgId, int i) {
+            return new AuditRow(id(i), orgId, actor(i), string(ACTION, i), string(RESOURCE_TYPE, i),
+                    string(RESOURCE_ID, i), string(IP, i), string(METADATA, i), createdAt(i));
+        }
+
+        private byte[] raw(int column) {
+            if (raw[column] == null) raw[column] = reader.inflate(block, column);
+            return raw[column];
+        }
+
+        private UUID[] uuids(int column) {
+            UUID[] values = (UUID[]) columns[column];
+            if (values == null) {
+                values = new UUID[block.rows()];
+                ByteBuffer in = ByteBuffer.wrap(raw(column));
+                for (int r = 0; r < values.length; r++) {
+                    if (column == ACTOR && in.get() == 0) continue;
+                    values[r] = new UUID(in.getLong(), in.getLong());
+                }
+                columns[column] = values;
+            }
+            return values;
+        }
+    }
+
+    static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).array();
+    }
+
+    static long micros(Instant t) {
+        return Math.addExact(Math.multiplyExact(t.getEpochSecond(), 1_000_000L), t.getNano() / 1_000);
+    }
+
+    static Instant instant(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    // Length + 1 first, so 0 is null.
+    private static String readString(ByteBuffer in) {
+        int len = (int) readVarLong(in) - 1;
+        if (len < 0) return null;
+        String s = new String(in.array(), in.position(), len, StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return s;
+    }
+
+    private static Set<String> readStrings(ByteBuffer in) {
+        int n = in.getInt();
+        Set<String> values = new TreeSet<>();
+        for (int i = 0; i < n; i++) {
+            byte[] b = new byte[in.getInt()];
+            in.get(b);
+            values.add(new String(b, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static final class Column extends ByteArrayOutputStream {
+        void writeVarLong(long v) {
+            while ((v & ~0x7fL) != 0) {
+                write((int) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(b.length + 1L);
+            write(b, 0, b.length);
+        }
+
+        void writeUuid(UUID id) {
+            writeLong(id.getMostSignificantBits());
+            writeLong(id.getLeastSignificantBits());
+        }
+
+        void writeInt(int v) {
+            for (int s = 24; s >= 0; s -= 8) write(v >>> s);
+        }
+
+        void writeLong(long v) {
+            for (int s = 56; s >= 0; s -= 8) write((int) (v >>> s));
+        }
+
+        void writeStrings(Set<String> values) {
+            writeInt(values.size());
+            for (String v : values) {
+                byte[] b = v.getBytes(StandardCharsets.UTF_8);
+                writeInt(b.length);
+                write(b, 0, b.length);
+            }
+        }
+    }
+}
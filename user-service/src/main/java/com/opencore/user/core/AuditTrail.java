@@ -0,0 +1,80 @@
+package com.opencore.user.core;
+
+import com.opencore.user.persistence.AuditFilter;
+import com.opencore.user.persistence.AuditRow;
+import com.opencore.user.persistence.AuditRowReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * An org's audit trail across Postgres and the {@link AuditArchive}, in one order. The archive is only read when a
+ * page reaches past the rows still in Postgres, so queries within the hot window never touch it.
+ *
+ * A row can briefly be in both, if archiving a month failed between writing the segment and committing the delete;
+ * it is returned once.
+ */
+@Component
+public class AuditTrail {
+    private final AuditRowReader rows;
+    private final AuditArchive archive;
+    private final Timer coldPage;
+
+    public AuditTrail(AuditRowReader rows, AuditArchive archive, MeterRegistry meterRegistry) {
+        this.rows = rows;
+        this.archive = archive;
+        this.coldPage = Timer.builder("opencore.user.audit.archive.page")
+                .description("Time to read one page's worth of archived audit rows")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    /** Up to {@code limit} rows matching the filter, newest first, strictly older than the position when given. */
+    public List<AuditRow> page(AuditFilter f, Instant beforeCreatedAt, UUID beforeId, int limit) {
+        List<AuditRow> hot = rows.page(f, beforeCreatedAt, beforeId, limit);
+        Instant archived = archive.end(f.orgId());
+        // Everything archived is older than the newest archived month's end.
+        if (archived == null
+                || (f.from() != null && !f.from().isBefore(archived))
+                || (hot.size() == limit && !hot.get(limit - 1).createdAt().isBefore(archived))) {
+            return hot;
+        }
+        List<AuditRow> cold = coldPage.record(() -> archive.page(f, beforeCreatedAt, beforeId, limit));
+        if (cold.isEmpty()) return hot;
+        List<AuditRow> merged = new ArrayList<>(limit);
+        int h = 0;
+        int c = 0;
+        while (merged.size() < limit && (h < hot.size() || c < cold.size())) {
+            int order = h == hot.size() ? -1 : c == cold.size() ? 1 : AuditRow.ORDER.compare(hot.get(h), cold.get(c));
+            if (order >= 0) merged.add(hot.get(h++));
+            if (order <= 0) {
+                if (order < 0) merged.add(cold.get(c));
+                c++;
+            }
+        }
+        return merged;
+    }
+
+    /** Every matching row, oldest first; archived rows are merged in as the database cursor passes them. */
+    public void export(AuditFilter f, Consumer<AuditRow> sink) {
+        Iterator<AuditRow> cold = archive.end(f.orgId()) == null ? null : archive.scan(f);
+        AuditRow[] next = {cold != null && cold.hasNext() ? cold.next() : null};
+        rows.export(f, r -> {
+            while (next[0] != null && AuditRow.ORDER.compare(next[0], r) <= 0) {
+                if (AuditRow.ORDER.compare(next[0], r) < 0) sink.accept(next[0]);
+                next[0] = cold.hasNext() ? cold.next() : null;
+            }
+            sink.accept(r);
+        });
+        for (AuditRow r = next[0]; r != null; r = cold.hasNext() ? cold.next() : null) {
+            sink.accept(r);
+        }
+    }
+}
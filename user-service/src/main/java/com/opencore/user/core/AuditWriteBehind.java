@@ -0,0 +1,316 @@
+package com.opencore.user.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencore.user.persistence.AuditRow;
+import com.opencore.user.persistence.AuditRowWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Writes audit rows from a bounded in-memory queue on a background thread, a batch per statement.
+ *
+ * The queue is a lock-free linked queue bounded by a reservation counter. The writer flushes when a batch's worth is
+ * waiting or the flush interval passes, whichever comes first. A full queue is handled by the configured
+ * {@link OpenCoreAuditProperties.Overflow} policy. Spilled rows are replayed whenever the writer finds the queue
+ * empty, including on the next start. Rows still queued when the process dies without a graceful shutdown are lost.
+ */
+final class AuditWriteBehind implements MeterBinder, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(AuditWriteBehind.class);
+
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+    private static final String SPILL_PREFIX = "audit-spill-";
+
+    private final OpenCoreAuditProperties props;
+    private final AuditRowWriter writer;
+    private final ObjectMapper json;
+    private final ConcurrentLinkedQueue<AuditRow> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Object spillLock = new Object();
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile boolean spillPending;
+    private BufferedWriter spill;
+    private long spillSequence;
+
+    private Counter blocked;
+    private Counter spilled;
+    private Counter dropped;
+    private Counter failures;
+    private DistributionSummary batchRows;
+    private Timer flushTime;
+    private Timer delay;
+
+    AuditWriteBehind(OpenCoreAuditProperties props, AuditRowWriter writer, ObjectMapper json) {
+        this.props = props;
+        this.writer = writer;
+        this.json = json;
+        this.spillPending = props.overflow() == OpenCoreAuditProperties.Overflow.SPILL && !spillFiles().isEmpty();
+        this.thread = new Thread(this::run, "user-audit-writer");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void enqueue(AuditRow row) {
+        if (!running) {
+            // Closed: nothing drains the queue any more, so write through.
+            writer.insert(List.of(row));
+            return;
+        }
+        int reserved = reserve();
+        if (reserved > 0) {
+            add(row, reserved);
+            return;
+        }
+        switch (props.overflow()) {
+            case BLOCK -> {
+                blocked.increment();
+                while ((reserved = reserve()) < 0) {
+                    if (!running) {
+                        writer.insert(List.of(row));
+                        return;
+                    }
+                    LockSupport.unpark(thread);
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+                }
+                add(row, reserved);
+            }
+            case SPILL -> spill(row);
+            case DROP -> dropped.increment();
+        }
+    }
+
+    int depth() {
+        return depth.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("opencore.user.audit.queue.depth", this, AuditWriteBehind::depth)
+                .description("Audit rows waiting to be written")
+                .register(registry);
+        blocked = overflow(registry, "blocked");
+        spilled = overflow(registry, "spilled");
+        dropped = overflow(registry, "dropped");
+        failures = Counter.builder("opencore.user.audit.flush.failures")
+                .description("Audit batches that failed to write and were retried")
+                .register(registry);
+        batchRows = DistributionSummary.builder("opencore.user.audit.flush.rows")
+                .description("Rows per audit batch written")
+                .register(registry);
+        flushTime = Timer.builder("opencore.user.audit.flush")
+                .description("Time to write one audit batch")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        delay = Timer.builder("opencore.user.audit.write.delay")
+                .description("Age of the oldest row in each audit batch when it was written")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    /** Stops taking rows on the queue and writes out everything still queued. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (spillLock) {
+            closeSpill();
+        }
+        if (depth.get() > 0) {
+            log.error("audit writer stopped with {} rows unwritten", depth.get());
+        }
+    }
+
+    // Returns the depth including the reserved slot, or -1 if the queue is full or closed.
+    private int reserve() {
+        int d;
+        do {
+            if (!running) return -1;
+            d = depth.get();
+            if (d >= props.queueCapacity()) return -1;
+        } while (!depth.compareAndSet(d, d + 1));
+        return d + 1;
+    }
+
+    private void add(AuditRow row, int reserved) {
+        queue.offer(row);
+        if (reserved == props.batchSize()) LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, props.flushIntervalMillis()));
+        List<AuditRow> batch = new ArrayList<>(props.batchSize());
+        while (true) {
+            AuditRow row;
+            while (batch.size() < props.batchSize() && (row = queue.poll()) != null) {
+                batch.add(row);
+            }
+            if (!batch.isEmpty()) {
+                if (!write(batch)) break;
+                depth.addAndGet(-batch.size());
+                batch.clear();
+                continue;
+            }
+            if (!running && depth.get() == 0) break;
+            if (spillPending) {
+                replaySpill();
+                continue;
+            }
+            LockSupport.parkNanos(flushNanos);
+        }
+        if (!batch.isEmpty() || depth.get() > 0) spillRemaining(batch);
+    }
+
+    // Retries until the batch is written; gives up only once close() has been called.
+    private boolean write(List<AuditRow> batch) {
+        long backoff = 0;
+        while (true) {
+            long started = System.nanoTime();
+            try {
+                writer.insert(batch);
+                flushTime.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                batchRows.record(batch.size());
+                Instant oldest = batch.get(0).createdAt();
+                for (AuditRow r : batch) {
+                    if (r.createdAt().isBefore(oldest)) oldest = r.createdAt();
+                }
+                delay.record(Duration.between(oldest, Instant.now()));
+                return true;
+            } catch (Exception e) {
+                failures.increment();
+                if (!running) {
+                    log.warn("audit batch of {} rows failed during shutdown: {}", batch.size(), e.toString());
+                    return false;
+                }
+                backoff = Math.min(MAX_BACKOFF_MILLIS, Math.max(100, backoff * 2));
+                log.warn("audit batch of {} rows failed, retrying in {} ms: {}", batch.size(), backoff, e.toString());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+            }
+        }
+    }
+
+    private void spillRemaining(List<AuditRow> batch) {
+        if (props.overflow() != OpenCoreAuditProperties.Overflow.SPILL) return;
+        List<AuditRow> rest = new ArrayList<>(batch);
+        AuditRow row;
+        while ((row = queue.poll()) != null) rest.add(row);
+        for (AuditRow r : rest) spill(r);
+        depth.addAndGet(-rest.size());
+        log.warn("audit writer spilled {} unwritten rows to {}", rest.size(), props.spillDirectory());
+    }
+
+    private void spill(AuditRow row) {
+        try {
+            String line = json.writeValueAsString(row);
+            synchronized (spillLock) {
+                if (spill == null) {
+                    Path dir = Path.of(props.spillDirectory());
+                    Files.createDirectories(dir);
+                    String name = SPILL_PREFIX + System.currentTimeMillis() + "-" + spillSequence++ + ".ndjson";
+                    spill = Files.newBufferedWriter(dir.resolve(name), StandardCharsets.UTF_8);
+                }
+                spill.write(line);
+                spill.newLine();
+                spill.flush();
+            }
+            spillPending = true;
+            spilled.increment();
+        } catch (IOException e) {
+            dropped.increment();
+            log.error("audit row {} dropped: spill failed: {}", row.id(), e.toString());
+        }
+    }
+
+    // Writes spilled files back in batches and deletes each once it is fully written. Rows spilled meanwhile go to a
+    // new file, left for the next replay.
+    private void replaySpill() {
+        List<Path> files;
+        synchronized (spillLock) {
+            closeSpill();
+            spillPending = false;
+            files = spillFiles();
+        }
+        for (Path file : files) {
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                List<AuditRow> batch = new ArrayList<>(props.batchSize());
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    batch.add(json.readValue(line, AuditRow.class));
+                    if (batch.size() == props.batchSize()) {
+                        if (!write(batch)) return;
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty() && !write(batch)) return;
+            } catch (IOException e) {
+                // Left in place; the next replay tries again.
+                log.error("audit spill file {} unreadable: {}", file, e.toString());
+                continue;
+            }
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                log.error("audit spill file {} written but not deleted: {}", file, e.toString());
+            }
+        }
+    }
+
+    private void closeSpill() {
+        if (spill == null) return;
+        try {
+            spill.close();
+        } catch (IOException e) {
+            log.warn("closing audit spill file failed: {}", e.toString());
+        }
+        spill = null;
+    }
+
+    private List<Path> spillFiles() {
+        Path dir = Path.of(props.spillDirectory());
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(SPILL_PREFIX)).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Counter overflow(MeterRegistry registry, String outcome) {
+        return Counter.builder("opencore.user.audit.overflow")
+                .description("Audit rows that found the write-behind queue full")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,12 @@
+package com.opencore.user.core;
+
+import java.util.UUID;
+
+/**
+ * Assigns ids to new users, orgs, audit rows and events. The bean is picked by opencore.ids.format; a @Primary
+ * IdGenerator bean takes its place. Ids of every format coexist in the same columns.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+    UUID next();
+}
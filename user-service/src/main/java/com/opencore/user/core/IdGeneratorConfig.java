@@ -0,0 +1,17 @@
+package com.opencore.user.core;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.UUID;
+
+@Configuration
+public class IdGeneratorConfig {
+    @Bean
+    public IdGenerator idGenerator(OpenCoreIdProperties props) {
+        return switch (props.format()) {
+            case V7 -> new UuidV7Generator();
+            case RANDOM -> UUID::randomUUID;
+        };
+    }
+}
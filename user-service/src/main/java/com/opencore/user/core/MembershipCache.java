@@ -0,0 +1,168 @@
+package com.opencore.user.core;
+
+import com.opencore.user.persistence.OrgMembershipRepository;
+import com.opencore.user.persistence.UserOrg;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Each user's orgs, with org names and roles, as last read from the database. Bounded by opencore.membership-cache
+ * maxSize, oldest load evicted first, and every entry expires ttlSeconds after its load.
+ *
+ * Concurrent misses for a user share one load. An entry is the load's future, so invalidating while a load is in
+ * flight drops that load's result from the cache too: callers already waiting get it, later ones reload. Entries are
+ * invalidated locally when a membership change commits, and on every replica by the change's event; the TTL bounds
+ * staleness if events stop arriving.
+ */
+@Component
+public class MembershipCache {
+    private final OrgMembershipRepository memberships;
+    private final ReplicaRouter router;
+    private final OpenCoreMembershipCacheProperties props;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+    // Entries in load order. Replaced or invalidated ones stay until they reach the head.
+    private final ConcurrentLinkedQueue<Entry> loadOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter evictedSize;
+    private final Counter evictedExpired;
+    private final Counter invalidated;
+    private final Timer loads;
+
+    public MembershipCache(
+            OrgMembershipRepository memberships,
+            ReplicaRouter router,
+            OpenCoreMembershipCacheProperties props,
+            MeterRegistry registry
+    ) {
+        this.memberships = memberships;
+        this.router = router;
+        this.props = props;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(props.ttlSeconds());
+        this.hits = gets(registry, "hit");
+        this.misses = gets(registry, "miss");
+        this.coalesced = gets(registry, "coalesced");
+        this.evictedSize = evictions(registry, "size");
+        this.evictedExpired = evictions(registry, "expired");
+        this.invalidated = evictions(registry, "invalidated");
+        this.loads = Timer.builder("opencore.user.membership.cache.loads")
+                .description("Time to load one user's orgs on a cache miss")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        Gauge.builder("opencore.user.membership.cache.size", entries, ConcurrentHashMap::size)
+                .description("Users whose orgs are cached")
+                .register(registry);
+    }
+
+    public List<UserOrg> get(UUID userId) {
+        if (!props.enabled()) return read(userId);
+        long now = System.nanoTime();
+        while (true) {
+            Entry current = entries.get(userId);
+            if (current != null && now - current.loadedAt < ttlNanos) {
+                (current.value.isDone() ? hits : coalesced).increment();
+                return join(current.value);
+            }
+            Entry mine = new Entry(userId, now);
+            boolean installed = current == null
+                    ? entries.putIfAbsent(userId, mine) == null
+                    : entries.replace(userId, current, mine);
+            if (!installed) continue;
+            if (current != null) evictedExpired.increment();
+            misses.increment();
+            loadOrder.add(mine);
+            queued.incrementAndGet();
+            evictOverflow();
+            return load(mine);
+        }
+    }
+
+    /**
+     * Drops the user's entry, including one still loading. The reload reads from the primary for a while, as a replica
+     * may not have the change yet.
+     */
+    public void invalidate(UUID userId) {
+        router.wrote(userId);
+        if (entries.remove(userId) != null) invalidated.increment();
+    }
+
+    private List<UserOrg> load(Entry entry) {
+        long started = System.nanoTime();
+        try {
+            List<UserOrg> orgs = List.copyOf(read(entry.userId));
+            entry.value.complete(orgs);
+            return orgs;
+        } catch (RuntimeException e) {
+            // Not cached: waiters see this failure, the next caller tries again.
+            entries.remove(entry.userId, entry);
+            entry.value.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private List<UserOrg> read(UUID userId) {
+        return router.readingFor(userId, () -> memberships.findOrgsOfUser(userId));
+    }
+
+    // Also trims the order queue when stale entries pile up in it; whatever live entry is at its head is the oldest.
+    private void evictOverflow() {
+        while (entries.size() > props.maxSize() || queued.get() > 2 * props.maxSize()) {
+            Entry oldest = loadOrder.poll();
+            if (oldest == null) return;
+            queued.decrementAndGet();
+            if (entries.remove(oldest.userId, oldest)) evictedSize.increment();
+        }
+    }
+
+    private static List<UserOrg> join(CompletableFuture<List<UserOrg>> value) {
+        try {
+            return value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            throw e;
+        }
+    }
+
+    private static Counter gets(MeterRegistry registry, String result) {
+        return Counter.builder("opencore.user.membership.cache.gets")
+                .description("Membership cache lookups; coalesced ones waited on another caller's load")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static Counter evictions(MeterRegistry registry, String cause) {
+        return Counter.builder("opencore.user.membership.cache.evictions")
+                .description("Membership cache entries removed before being reused")
+                .tag("cause", cause)
+                .register(registry);
+    }
+
+    private static final class Entry {
+        final UUID userId;
+        final long loadedAt;
+        final CompletableFuture<List<UserOrg>> value = new CompletableFuture<>();
+
+        Entry(UUID userId, long loadedAt) {
+            this.userId = userId;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.opencore.user.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "opencore.audit")
+public record OpenCoreAuditProperties(
+        boolean writeBehind,
+        int queueCapacity,
+        int batchSize,
+        long flushIntervalMillis,
+        Overflow overflow,
+        String spillDirectory,
+        Partitions partitions,
+        Archive archive
+) {
+    public OpenCoreAuditProperties {
+        if (overflow == null) overflow = Overflow.SPILL;
+        if (partitions == null) partitions = new Partitions(3, 0, Expired.DROP);
+        if (archive == null) archive = new Archive(false, "./data/audit-archive", 12);
+    }
+
+    /**
+     * Monthly audit_logs partitions: how many months ahead to create, and how many whole months to keep (0 keeps
+     * everything). Older partitions are dropped or detached into standalone tables.
+     */
+    public record Partitions(int premakeMonths, int retentionMonths, Expired expired) {
+        public Partitions {
+            if (expired == null) expired = Expired.DROP;
+        }
+    }
+
+    /**
+     * Moving audit rows older than {@code hotMonths} whole months out of Postgres into segment files under
+     * {@code directory}. Reads use the directory whether or not the job is enabled.
+     */
+    public record Archive(boolean enabled, String directory, int hotMonths) {
+        public Archive {
+            if (directory == null) directory = "./data/audit-archive";
+        }
+    }
+
+    public enum Expired {
+        DROP,
+        DETACH
+    }
+
+    /** What a write does when the write-behind queue is full. */
+    public enum Overflow {
+        /** Wait for room; writes slow down to the rate the database absorbs. */
+        BLOCK,
+        /** Append the row to a local file, replayed into the database once the queue has drained. */
+        SPILL,
+        /** Discard the row and count it. */
+        DROP
+    }
+}
@@ -0,0 +1,13 @@
+package com.opencore.user.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "opencore.ids")
+public record OpenCoreIdProperties(
+        Format format
+) {
+    public enum Format {
+        V7,
+        RANDOM
+    }
+}
@@ -0,0 +1,10 @@
+package com.opencore.user.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "opencore.jwt")
+public record OpenCoreJwtProperties(
+        String issuer,
+        String secret,
+        boolean required
+) {}
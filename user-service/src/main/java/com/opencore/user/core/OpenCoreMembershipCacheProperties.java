@@ -0,0 +1,10 @@
+package com.opencore.user.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "opencore.membership-cache")
+public record OpenCoreMembershipCacheProperties(
+        boolean enabled,
+        int maxSize,
+        long ttlSeconds
+) {}
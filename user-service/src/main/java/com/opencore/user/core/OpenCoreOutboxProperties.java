@@ -0,0 +1,9 @@
+package com.opencore.user.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "opencore.outbox")
+public record OpenCoreOutboxProperties(
+        int batchSize,
+        long pollIntervalMillis
+) {}
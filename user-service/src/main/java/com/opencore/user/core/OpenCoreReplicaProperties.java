@@ -0,0 +1,28 @@
+package com.opencore.user.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+
+@ConfigurationProperties(prefix = "opencore.replicas")
+public record OpenCoreReplicaProperties(
+        List<String> urls,
+        String username,
+        String password,
+        Selection selection,
+        int poolSize,
+        long maxLagMillis,
+        long lagCheckMillis,
+        long readYourWritesMillis
+) {
+    public OpenCoreReplicaProperties {
+        urls = urls == null ? List.of() : urls.stream().map(String::trim).filter(u -> !u.isEmpty()).toList();
+        if (selection == null) selection = Selection.ROUND_ROBIN;
+    }
+
+    /** Which eligible replica serves the next read: in turn, or the one with the fewest connections in use. */
+    public enum Selection {
+        ROUND_ROBIN,
+        LEAST_LOADED
+    }
+}
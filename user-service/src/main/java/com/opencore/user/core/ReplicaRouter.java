@@ -0,0 +1,347 @@
+package com.opencore.user.core;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends read-only transactions to the streaming replicas in opencore.replicas, and everything else to the primary.
+ *
+ * A replica takes reads while its last lag check found it within maxLagMillis of the primary. When none does, or the
+ * chosen one cannot hand out a connection, the read runs on the primary instead. So does a read by a caller (the
+ * token's user) who committed a change in the last readYourWritesMillis, and a read {@link #readingFor made for a
+ * user} whose data changed that recently, so nobody reads back an older state than the one they just wrote. Callers
+ * without a token are not told apart, since behind the gateway they share an address, and their reads can trail their
+ * own writes by up to maxLagMillis. With no replicas configured everything is the primary and none of this runs.
+ */
+@Component
+public class ReplicaRouter {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    // A replica that cannot connect this fast is skipped until its next successful lag check.
+    private static final long CONNECT_TIMEOUT_MILLIS = 500;
+    // Lag checks older than this many intervals no longer vouch for a replica.
+    private static final int STALE_CHECKS = 3;
+
+    private static final String PRIMARY_POSITION = "select cast(pg_current_wal_lsn() as text)";
+    private static final String REPLICA_LAG = """
+            select pg_is_in_recovery(),
+                   coalesce(pg_last_wal_replay_lsn() >= cast(? as pg_lsn), false),
+                   cast(extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000 as bigint)
+            """;
+
+    private final HikariDataSource primary;
+    private final OpenCoreReplicaProperties props;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger turn = new AtomicInteger();
+    private final long readYourWritesNanos;
+    private final long staleNanos;
+    // Users who made or had a recent change, until when their reads stay on the primary (System.nanoTime()).
+    private final ConcurrentHashMap<UUID, Long> recentWrites = new ConcurrentHashMap<>();
+    private final ThreadLocal<UUID> subject = new ThreadLocal<>();
+
+    private final Counter primaryReadYourWrites;
+    private final Counter primaryLagging;
+    private final Counter primaryUnavailable;
+    private final ScheduledExecutorService scheduler;
+    private boolean checkFailing;
+
+    public ReplicaRouter(HikariDataSource primary, OpenCoreReplicaProperties props, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.props = props;
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(props.readYourWritesMillis());
+        this.staleNanos = TimeUnit.MILLISECONDS.toNanos(STALE_CHECKS * props.lagCheckMillis());
+        this.primaryReadYourWrites = reads(meterRegistry, primary.getPoolName(), "read_your_writes");
+        this.primaryLagging = reads(meterRegistry, primary.getPoolName(), "lagging");
+        this.primaryUnavailable = reads(meterRegistry, primary.getPoolName(), "unavailable");
+
+        for (int i = 0; i < props.urls().size(); i++) {
+            HikariConfig cfg = new HikariConfig();
+            cfg.setPoolName("replica-" + (i + 1));
+            cfg.setJdbcUrl(props.urls().get(i));
+            cfg.setUsername(props.username() == null ? primary.getUsername() : props.username());
+            cfg.setPassword(props.password() == null ? primary.getPassword() : props.password());
+            cfg.setMaximumPoolSize(props.poolSize());
+            cfg.setReadOnly(true);
+            cfg.setConnectionTimeout(CONNECT_TIMEOUT_MILLIS);
+            // Start even when the replica is down; it takes reads once a lag check gets through.
+            cfg.setInitializationFailTimeout(-1);
+            cfg.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            Replica r = new Replica(new HikariDataSource(cfg), reads(meterRegistry, cfg.getPoolName(), "replica"));
+            Gauge.builder("opencore.user.db.replica.lag.seconds", r, Replica::lagSeconds)
+                    .description("How far the replica's replay was behind the primary at the last check; NaN when unreachable")
+                    .tag("pool", cfg.getPoolName())
+                    .register(meterRegistry);
+            replicas.add(r);
+        }
+
+        if (replicas.isEmpty()) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-db-replica-lag");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkQuietly, 0, props.lagCheckMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) scheduler.shutdownNow();
+        for (Replica r : replicas) {
+            r.pool.close();
+        }
+    }
+
+    public boolean enabled() {
+        return !replicas.isEmpty();
+    }
+
+    /** The primary, noting in each read-write transaction that its caller wrote once it commits. */
+    public DataSource writes() {
+        return new Writes();
+    }
+
+    /** Connections for read-only transactions: a replica's, or the primary's set read-only when no replica fits. */
+    public DataSource reads() {
+        return new Reads();
+    }
+
+    /** Keeps reads by or for this user on the primary for readYourWritesMillis, e.g. after their memberships changed. */
+    public void wrote(UUID userId) {
+        if (userId == null || replicas.isEmpty()) return;
+        recentWrites.put(userId, System.nanoTime() + readYourWritesNanos);
+    }
+
+    /** Runs {@code read} with its reads treated as reads of this user's data, which {@link #wrote} may pin. */
+    public <T> T readingFor(UUID userId, Supplier<T> read) {
+        if (replicas.isEmpty()) return read.get();
+        UUID outer = subject.get();
+        subject.set(userId);
+        try {
+            return read.get();
+        } finally {
+            if (outer == null) subject.remove();
+            else subject.set(outer);
+        }
+    }
+
+    private boolean recentlyWrote(UUID userId) {
+        if (userId == null) return false;
+        Long until = recentWrites.get(userId);
+        return until != null && until - System.nanoTime() > 0;
+    }
+
+    private Connection readOnlyConnection() throws SQLException {
+        if (recentlyWrote(caller()) || recentlyWrote(subject.get())) return onPrimary(primaryReadYourWrites);
+        Replica r = pick();
+        if (r == null) return onPrimary(primaryLagging);
+        Connection c;
+        try {
+            c = r.pool.getConnection();
+        } catch (SQLException e) {
+            log.debug("{} refused a connection, reading from the primary", r.pool.getPoolName(), e);
+            r.markDown();
+            return onPrimary(primaryUnavailable);
+        }
+        r.reads.increment();
+        return c;
+    }
+
+    private Replica pick() {
+        long now = System.nanoTime();
+        int n = replicas.size();
+        int first = Math.floorMod(turn.getAndIncrement(), n);
+        Replica best = null;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Replica r = replicas.get((first + i) % n);
+            if (!r.eligible(now)) continue;
+            if (props.selection() == OpenCoreReplicaProperties.Selection.ROUND_ROBIN) return r;
+            int active = r.pool.getHikariPoolMXBean().getActiveConnections();
+            if (active < bestActive) {
+                best = r;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+
+    private Connection onPrimary(Counter route) throws SQLException {
+        Connection c = primary.getConnection();
+        try {
+            c.setReadOnly(true);
+        } catch (SQLException e) {
+            c.close();
+            throw e;
+        }
+        route.increment();
+        return c;
+    }
+
+    void checkLag() throws SQLException {
+        String position;
+        try (Connection c = primary.getConnection();
+             PreparedStatement ps = c.prepareStatement(PRIMARY_POSITION);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            position = rs.getString(1);
+        }
+        for (Replica r : replicas) {
+            r.check(position);
+        }
+        long now = System.nanoTime();
+        recentWrites.values().removeIf(until -> until - now <= 0);
+    }
+
+    private void checkQuietly() {
+        try {
+            checkLag();
+            checkFailing = false;
+        } catch (Exception e) {
+            // Replicas stop taking reads once their last check goes stale. Logged once per outage, not every check.
+            if (!checkFailing) log.warn("replica lag check failed", e);
+            checkFailing = true;
+        }
+    }
+
+    private static UUID caller() {
+        RequestContext ctx = RequestContextHolder.get();
+        return ctx == null ? null : ctx.actorUserId();
+    }
+
+    private static Counter reads(MeterRegistry registry, String pool, String route) {
+        return Counter.builder("opencore.user.db.reads")
+                .description("Read-only transactions by the pool that served them, and why the primary when it did")
+                .tag("pool", pool)
+                .tag("route", route)
+                .register(registry);
+    }
+
+    private final class Replica {
+        final HikariDataSource pool;
+        final Counter reads;
+        // Replay lag at the last check; negative when the replica could not be checked.
+        volatile long lagMillis = -1;
+        volatile long checkedAt;
+        volatile boolean serving;
+
+        Replica(HikariDataSource pool, Counter reads) {
+            this.pool = pool;
+            this.reads = reads;
+        }
+
+        boolean eligible(long now) {
+            return lagMillis >= 0 && lagMillis <= props.maxLagMillis() && now - checkedAt < staleNanos;
+        }
+
+        void check(String primaryPosition) {
+            try (Connection c = pool.getConnection(); PreparedStatement ps = c.prepareStatement(REPLICA_LAG)) {
+                ps.setString(1, primaryPosition);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    if (!rs.getBoolean(1)) {
+                        // Promoted, or not a standby at all: it no longer follows the primary's writes.
+                        record(-1, "is not in recovery");
+                        return;
+                    }
+                    long replayLag = rs.getLong(3);
+                    boolean replayedNothing = rs.wasNull();
+                    // Replayed up to the position read just before: nothing committed on the primary is missing.
+                    if (rs.getBoolean(2)) record(0, null);
+                    else record(replayedNothing ? -1 : Math.max(0, replayLag), "has not replayed anything yet");
+                }
+            } catch (SQLException e) {
+                record(-1, "is unreachable: " + e.getMessage());
+            }
+        }
+
+        void markDown() {
+            lagMillis = -1;
+        }
+
+        double lagSeconds() {
+            long lag = lagMillis;
+            return lag < 0 ? Double.NaN : lag / 1000.0;
+        }
+
+        private void record(long lag, String whyDown) {
+            lagMillis = lag;
+            checkedAt = System.nanoTime();
+            boolean nowServing = eligible(checkedAt);
+            if (nowServing == serving) return;
+            serving = nowServing;
+            if (nowServing) {
+                log.info("{} is within {}ms of the primary, routing reads to it", pool.getPoolName(), props.maxLagMillis());
+            } else if (lag < 0) {
+                log.warn("{} {}, reading from the primary", pool.getPoolName(), whyDown);
+            } else {
+                log.warn("{} is {}ms behind the primary, reading from the primary", pool.getPoolName(), lag);
+            }
+        }
+    }
+
+    private final class Writes extends DelegatingDataSource {
+        Writes() {
+            super(primary);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            UUID caller = caller();
+            if (caller != null) {
+                if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                    wrote(caller);
+                } else if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            wrote(caller);
+                        }
+                    });
+                }
+            }
+            return super.getConnection();
+        }
+    }
+
+    private final class Reads extends AbstractDataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return readOnlyConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return readOnlyConnection();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.opencore.user.core;
 
+import com.opencore.token.AccessTokenFilter;
+import com.opencore.token.VerifiedToken;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,7 +18,8 @@ public class RequestContextFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         try {
-            UUID actorUserId = parseUuid(request.getHeader("X-Actor-User-Id"));
+            VerifiedToken token = AccessTokenFilter.verifiedToken(request);
+            UUID actorUserId = token == null ? null : parseUuid(token.subject());
             UUID orgId = parseUuid(request.getHeader("X-Org-Id"));
             String ip = clientIp(request);
 
@@ -3,34 +3,46 @@ package com.opencore.user.core;
 import com.opencore.user.events.EventPublisher;
 import com.opencore.user.events.EventTopics;
 import com.opencore.user.persistence.*;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 public class UserOrgService {
-    private final UserRepository users;
-    private final OrganizationRepository orgs;
-    private final OrgMembershipRepository memberships;
+    private final UserOrgWriter writer;
+    private final MembershipCache memberships;
+    private final OrgMemberReader members;
     private final AuditLogger audit;
     private final EventPublisher events;
+    private final IdGenerator ids;
+    private final TransactionTemplate tx;
 
     public UserOrgService(
-            UserRepository users,
-            OrganizationRepository orgs,
-            OrgMembershipRepository memberships,
+            UserOrgWriter writer,
+            MembershipCache memberships,
+            OrgMemberReader members,
             AuditLogger audit,
-            EventPublisher events
+            EventPublisher events,
+            IdGenerator ids,
+            PlatformTransactionManager transactionManager
     ) {
-        this.users = users;
-        this.orgs = orgs;
+        this.writer = writer;
         this.memberships = memberships;
+        this.members = members;
         this.audit = audit;
         this.events = events;
+        this.ids = ids;
+        this.tx = new TransactionTemplate(transactionManager);
     }
 
     @Transactional
@@ -40,31 +52,109 @@ public class UserOrgService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "email required");
         }
 
-        Optional<UserEntity> existing = users.findByEmail(normalized);
-        if (existing.isPresent()) {
-            return existing.get().id;
+        UUID id = ids.next();
+        Instant createdAt = Instant.now();
+        var audit = this.audit.row("UserCreated", "User", id.toString(), "{\"email\":\"" + escape(normalized) + "\"}");
+        var inserted = writer.insertUser(id, normalized, createdAt, this.audit.inline(audit));
+        if (inserted == null) {
+            // Lost a race with a concurrent signup that was then rolled back; the caller can retry.
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "email is being registered concurrently");
         }
+        if (!inserted.created()) {
+            return inserted.id();
+        }
+        this.audit.writeBehind(List.of(audit));
 
-        UserEntity u = new UserEntity();
-        u.id = UUID.randomUUID();
-        u.email = normalized;
-        u.createdAt = Instant.now();
-        users.save(u);
-
-        audit.log("UserCreated", "User", u.id.toString(), "{\"email\":\"" + normalized + "\"}");
         events.publish(
                 EventTopics.USER_CREATED,
                 "UserCreated",
-                u.id.toString(),
+                id.toString(),
                 "user-service",
                 Map.of(
-                        "userId", u.id.toString(),
+                        "userId", id.toString(),
                         "email", normalized,
-                        "createdAt", u.createdAt.toString()
+                        "createdAt", createdAt.toString()
                 )
         );
 
-        return u.id;
+        return id;
+    }
+
+    /**
+     * Imports one chunk of users in a single transaction and returns a result per input email, in input order.
+     * Emails are normalized and deduplicated first; repeats within the chunk resolve to the same user. Events for
+     * new users go to the outbox in the same transaction.
+     */
+    public List<ImportedUser> importUsers(List<String> emails) {
+        List<ImportedUser> results = new ArrayList<>(emails.size());
+        Map<String, Integer> firstIndex = new LinkedHashMap<>();
+        for (String email : emails) {
+            String normalized = email == null ? "" : email.trim().toLowerCase();
+            if (normalized.isBlank()) {
+                results.add(new ImportedUser(normalized, null, ImportStatus.INVALID));
+                continue;
+            }
+            Integer first = firstIndex.putIfAbsent(normalized, results.size());
+            results.add(new ImportedUser(normalized, null, first == null ? null : ImportStatus.DUPLICATE));
+        }
+        if (firstIndex.isEmpty()) return results;
+
+        int n = firstIndex.size();
+        UUID[] userIds = new UUID[n];
+        UUID[] auditIds = new UUID[n];
+        String[] unique = firstIndex.keySet().toArray(new String[0]);
+        for (int i = 0; i < n; i++) {
+            userIds[i] = ids.next();
+            auditIds[i] = ids.next();
+        }
+        Instant createdAt = Instant.now();
+        var audit = this.audit.row("UserCreated", "User", null, null);
+        List<UserOrgWriter.InsertedUser> inserted = tx.execute(status -> {
+            var rows = writer.insertUsers(userIds, unique, auditIds, createdAt, this.audit.inline(audit));
+            List<EventPublisher.Event> created = new ArrayList<>(rows.size());
+            List<AuditRow> audited = new ArrayList<>();
+            for (var row : rows) {
+                if (!row.created()) continue;
+                if (this.audit.writesBehind()) {
+                    audited.add(this.audit.row("UserCreated", "User", row.id().toString(),
+                            "{\"email\":\"" + escape(row.email()) + "\"}"));
+                }
+                created.add(new EventPublisher.Event(
+                        EventTopics.USER_CREATED,
+                        "UserCreated",
+                        row.id().toString(),
+                        "user-service",
+                        Map.of(
+                                "userId", row.id().toString(),
+                                "email", row.email(),
+                                "createdAt", createdAt.toString()
+                        )
+                ));
+            }
+            events.publishAll(created);
+            this.audit.writeBehind(audited);
+            return rows;
+        });
+
+        Map<String, UserOrgWriter.InsertedUser> byEmail = new HashMap<>(inserted.size() * 2);
+        for (var row : inserted) {
+            byEmail.put(row.email(), row);
+        }
+        for (int i = 0; i < results.size(); i++) {
+            ImportedUser r = results.get(i);
+            if (r.status() == ImportStatus.INVALID) continue;
+            var row = byEmail.get(r.email());
+            if (row == null) {
+                // Only possible if a concurrent signup for this email rolled back mid-import.
+                results.set(i, new ImportedUser(r.email(), null, ImportStatus.CONFLICT));
+                continue;
+            }
+            ImportStatus status = r.status() == ImportStatus.DUPLICATE
+                    ? ImportStatus.DUPLICATE
+                    : row.created() ? ImportStatus.CREATED : ImportStatus.EXISTING;
+            results.set(i, new ImportedUser(r.email(), row.id(), status));
+        }
+        return results;
     }
 
     @Transactional
@@ -77,50 +167,48 @@ public class UserOrgService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "name required");
         }
 
-        if (users.findById(ownerUserId).isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "owner user not found");
+        UUID orgId = ids.next();
+        Instant createdAt = Instant.now();
+        var audit = this.audit.row("OrgCreated", "Organization", orgId.toString(), "{\"name\":\"" + escape(n) + "\"}");
+        try {
+            writer.insertOrganization(orgId, n, ownerUserId, "Admin", createdAt, this.audit.inline(audit));
+        } catch (DataIntegrityViolationException e) {
+            if (UserOrgWriter.violates(e, UserOrgWriter.MEMBER_USER_FK)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "owner user not found");
+            }
+            throw e;
         }
+        this.audit.writeBehind(List.of(audit));
+        invalidateAfterCommit(ownerUserId);
 
-        OrganizationEntity org = new OrganizationEntity();
-        org.id = UUID.randomUUID();
-        org.name = n;
-        org.createdAt = Instant.now();
-        orgs.save(org);
-
-        OrgMembershipEntity m = new OrgMembershipEntity();
-        m.id = new OrgMembershipId(org.id, ownerUserId);
-        m.role = "Admin";
-        m.createdAt = Instant.now();
-        memberships.save(m);
-
-        audit.log("OrgCreated", "Organization", org.id.toString(), "{\"name\":\"" + escape(n) + "\"}");
-        events.publish(
-                EventTopics.ORG_CREATED,
-                "OrgCreated",
-                org.id.toString(),
-                "user-service",
-                Map.of(
-                        "orgId", org.id.toString(),
-                        "name", org.name,
-                        "ownerUserId", ownerUserId.toString(),
-                        "createdAt", org.createdAt.toString()
+        events.publishAll(List.of(
+                new EventPublisher.Event(
+                        EventTopics.ORG_CREATED,
+                        "OrgCreated",
+                        orgId.toString(),
+                        "user-service",
+                        Map.of(
+                                "orgId", orgId.toString(),
+                                "name", n,
+                                "ownerUserId", ownerUserId.toString(),
+                                "createdAt", createdAt.toString()
+                        )
+                ),
+                new EventPublisher.Event(
+                        EventTopics.ORG_MEMBER_ADDED,
+                        "OrgMemberAdded",
+                        orgId + ":" + ownerUserId,
+                        "user-service",
+                        Map.of(
+                                "orgId", orgId.toString(),
+                                "userId", ownerUserId.toString(),
+                                "role", "Admin",
+                                "createdAt", createdAt.toString()
+                        )
                 )
-        );
+        ));
 
-        events.publish(
-                EventTopics.ORG_MEMBER_ADDED,
-                "OrgMemberAdded",
-                org.id + ":" + ownerUserId,
-                "user-service",
-                Map.of(
-                        "orgId", org.id.toString(),
-                        "userId", ownerUserId.toString(),
-                        "role", "Admin",
-                        "createdAt", m.createdAt.toString()
-                )
-        );
-
-        return org.id;
+        return orgId;
     }
 
     @Transactional
@@ -128,23 +216,26 @@ public class UserOrgService {
         if (orgId == null || userId == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "orgId and userId required");
         }
-        if (orgs.findById(orgId).isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "org not found");
-        }
-        if (users.findById(userId).isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "user not found");
-        }
 
         String r = role == null ? "User" : role.trim();
         if (r.isBlank()) r = "User";
 
-        OrgMembershipEntity m = new OrgMembershipEntity();
-        m.id = new OrgMembershipId(orgId, userId);
-        m.role = r;
-        m.createdAt = Instant.now();
-        memberships.save(m);
+        Instant createdAt = Instant.now();
+        var audit = this.audit.row("OrgMemberAdded", "OrgMembership", orgId + ":" + userId, "{\"role\":\"" + escape(r) + "\"}");
+        try {
+            writer.upsertMember(orgId, userId, r, createdAt, this.audit.inline(audit));
+        } catch (DataIntegrityViolationException e) {
+            if (UserOrgWriter.violates(e, UserOrgWriter.MEMBER_ORG_FK)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "org not found");
+            }
+            if (UserOrgWriter.violates(e, UserOrgWriter.MEMBER_USER_FK)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "user not found");
+            }
+            throw e;
+        }
+        this.audit.writeBehind(List.of(audit));
+        invalidateAfterCommit(userId);
 
-        audit.log("OrgMemberAdded", "OrgMembership", orgId + ":" + userId, "{\"role\":\"" + escape(r) + "\"}");
         events.publish(
                 EventTopics.ORG_MEMBER_ADDED,
                 "OrgMemberAdded",
@@ -154,32 +245,166 @@ public class UserOrgService {
                         "orgId", orgId.toString(),
                         "userId", userId.toString(),
                         "role", r,
-                        "createdAt", m.createdAt.toString()
+                        "createdAt", createdAt.toString()
                 )
         );
     }
 
-    public List<Map<String, Object>> listOrganizationsForUser(UUID userId) {
+    /**
+     * Adds or re-roles many members of one org in a single transaction and returns a result per input, in input
+     * order. The first occurrence of a user id wins; later ones are reported as duplicates. Unknown users are
+     * reported rather than failing the batch, but a missing org fails it. Members whose role doesn't change get no
+     * audit row or event.
+     */
+    public List<AddedMember> addMembers(UUID orgId, List<NewMember> members) {
+        if (orgId == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "orgId required");
+        }
+        List<AddedMember> results = new ArrayList<>(members.size());
+        Map<UUID, String> roles = new LinkedHashMap<>();
+        for (NewMember m : members) {
+            UUID userId = m == null ? null : parseUuid(m.userId());
+            if (userId == null) {
+                results.add(new AddedMember(null, null, MemberStatus.INVALID));
+                continue;
+            }
+            String r = m.role() == null ? "User" : m.role().trim();
+            if (r.isBlank()) r = "User";
+            String first = roles.putIfAbsent(userId, r);
+            results.add(new AddedMember(userId, first == null ? r : first, first == null ? null : MemberStatus.DUPLICATE));
+        }
+        if (roles.isEmpty()) return results;
+
+        int n = roles.size();
+        UUID[] userIds = roles.keySet().toArray(new UUID[0]);
+        String[] unique = roles.values().toArray(new String[0]);
+        UUID[] auditIds = new UUID[n];
+        for (int i = 0; i < n; i++) {
+            auditIds[i] = ids.next();
+        }
+        Instant createdAt = Instant.now();
+        var audit = this.audit.row("OrgMemberAdded", "OrgMembership", null, null);
+        List<UserOrgWriter.UpsertedMember> upserted = tx.execute(status -> {
+            List<UserOrgWriter.UpsertedMember> rows;
+            try {
+                rows = writer.upsertMembers(orgId, userIds, unique, auditIds, createdAt, this.audit.inline(audit));
+            } catch (DataIntegrityViolationException e) {
+                // The org was deleted between the statement's existence check and its insert.
+                if (UserOrgWriter.violates(e, UserOrgWriter.MEMBER_ORG_FK)) rows = null;
+                else throw e;
+            }
+            if (rows == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "org not found");
+            }
+            List<EventPublisher.Event> added = new ArrayList<>(rows.size());
+            List<AuditRow> audited = new ArrayList<>();
+            for (var row : rows) {
+                if (row.inserted() == null) continue;
+                String role = roles.get(row.userId());
+                if (this.audit.writesBehind()) {
+                    audited.add(this.audit.row("OrgMemberAdded", "OrgMembership", orgId + ":" + row.userId(),
+                            "{\"role\":\"" + escape(role) + "\"}"));
+                }
+                added.add(new EventPublisher.Event(
+                        EventTopics.ORG_MEMBER_ADDED,
+                        "OrgMemberAdded",
+                        orgId + ":" + row.userId(),
+                        "user-service",
+                        Map.of(
+                                "orgId", orgId.toString(),
+                                "userId", row.userId().toString(),
+                                "role", role,
+                                "createdAt", createdAt.toString()
+                        )
+                ));
+                invalidateAfterCommit(row.userId());
+            }
+            events.publishAll(added);
+            this.audit.writeBehind(audited);
+            return rows;
+        });
+
+        Map<UUID, Boolean> found = new HashMap<>(upserted.size() * 2);
+        for (var row : upserted) {
+            found.put(row.userId(), row.inserted());
+        }
+        for (int i = 0; i < results.size(); i++) {
+            AddedMember r = results.get(i);
+            if (r.status() != null) continue;
+            MemberStatus status;
+            if (!found.containsKey(r.userId())) status = MemberStatus.USER_NOT_FOUND;
+            else if (found.get(r.userId()) == null) status = MemberStatus.UNCHANGED;
+            else status = found.get(r.userId()) ? MemberStatus.ADDED : MemberStatus.UPDATED;
+            results.set(i, new AddedMember(r.userId(), r.role(), status));
+        }
+        return results;
+    }
+
+    /** Served from {@link MembershipCache}. */
+    public List<UserOrg> listOrganizationsForUser(UUID userId) {
         if (userId == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userId required");
         }
-        List<OrgMembershipEntity> ms = memberships.findAllByIdUserId(userId);
-        if (ms.isEmpty()) return List.of();
+        return memberships.get(userId);
+    }
+
+    /** One page of the org's members, oldest first, strictly after the position when given. */
+    public List<OrgMember> listMembers(UUID orgId, String role, Instant afterCreatedAt, UUID afterUserId, int limit) {
+        List<OrgMember> page = members.page(orgId, role, afterCreatedAt, afterUserId, limit);
+        // An empty page is all that needs telling apart from a missing org.
+        if (page.isEmpty() && !members.orgExists(orgId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "org not found");
+        }
+        return page;
+    }
 
-        Map<UUID, String> orgNames = new HashMap<>();
-        for (OrganizationEntity o : orgs.findAllById(ms.stream().map(m -> m.id.orgId).toList())) {
-            orgNames.put(o.id, o.name);
+    /** Every member, in page order, streamed from a database cursor. Checks the org first, before anything is sent. */
+    public void exportMembers(UUID orgId, String role, Consumer<OrgMember> sink) {
+        if (!members.orgExists(orgId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "org not found");
         }
+        members.export(orgId, role, sink);
+    }
+
+    public enum ImportStatus {
+        CREATED,
+        EXISTING,
+        DUPLICATE,
+        INVALID,
+        CONFLICT
+    }
+
+    public record ImportedUser(String email, UUID userId, ImportStatus status) {}
+
+    public enum MemberStatus {
+        ADDED,
+        UPDATED,
+        UNCHANGED,
+        DUPLICATE,
+        INVALID,
+        USER_NOT_FOUND
+    }
+
+    public record NewMember(String userId, String role) {}
+
+    public record AddedMember(UUID userId, String role, MemberStatus status) {}
+
+    // This replica's cache is fixed up as soon as the change commits; the event does the same for the others.
+    private void invalidateAfterCommit(UUID userId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                memberships.invalidate(userId);
+            }
+        });
+    }
 
-        List<Map<String, Object>> out = new ArrayList<>();
-        for (OrgMembershipEntity m : ms) {
-            out.add(Map.of(
-                    "orgId", m.id.orgId.toString(),
-                    "orgName", orgNames.getOrDefault(m.id.orgId, ""),
-                    "role", m.role
-            ));
+    private static UUID parseUuid(String s) {
+        try {
+            return s == null ? null : UUID.fromString(s.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
         }
-        return out;
     }
 
     private static String escape(String s) {
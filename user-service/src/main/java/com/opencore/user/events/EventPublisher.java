@@ -1,31 +1,111 @@
 package com.opencore.user.events;
 
-import org.springframework.kafka.core.KafkaTemplate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencore.user.core.IdGenerator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.support.JacksonUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
+/**
+ * Records events in the outbox as part of the caller's transaction, so an event exists exactly when the change it
+ * describes committed. {@link OutboxRelay} sends them to Kafka afterwards; callers never wait on the broker.
+ *
+ * Outbox ids are taken at insert, not at commit, so two transactions writing events for one key could otherwise commit
+ * in the opposite order to their ids, and the relay would send the later event first. Each transaction therefore holds
+ * a lock per key from its insert to its commit: transactions touching the same key commit in id order, and others
+ * don't wait on each other.
+ */
 @Component
 public class EventPublisher {
-    private final KafkaTemplate<String, CloudEventEnvelope> kafka;
+    // Keeps these locks apart from the relay's, which uses the single-bigint key space.
+    private static final int KEY_LOCK_SPACE = 0x6f75_7462;
+    // Taken in hash order, so two transactions locking overlapping keys can't deadlock. A hash collision only makes
+    // two keys share a lock.
+    private static final String LOCK_KEYS = """
+            select pg_advisory_xact_lock(?, h)
+            from (select distinct hashtext(k) as h from unnest(?) as k order by h) keys
+            """;
+    // One statement for any number of events; the rows keep the order they were published in.
+    private static final String INSERT = """
+            insert into user_service.event_outbox (topic, event_key, payload)
+            select topic, event_key, cast(payload as json)
+            from unnest(?, ?, ?) with ordinality as t(topic, event_key, payload, n)
+            order by n
+            """;
 
-    public EventPublisher(KafkaTemplate<String, CloudEventEnvelope> kafka) {
-        this.kafka = kafka;
+    // The mapper spring-kafka's JsonSerializer uses, so payloads are byte-for-byte what consumers received before.
+    private final ObjectMapper json = JacksonUtils.enhancedObjectMapper();
+    private final JdbcTemplate jdbc;
+    private final OutboxRelay relay;
+    private final IdGenerator ids;
+
+    public EventPublisher(JdbcTemplate jdbc, OutboxRelay relay, IdGenerator ids) {
+        this.jdbc = jdbc;
+        this.relay = relay;
+        this.ids = ids;
     }
 
+    @Transactional(propagation = Propagation.MANDATORY)
     public void publish(String topic, String type, String subject, String source, Map<String, Object> data) {
-        CloudEventEnvelope env = new CloudEventEnvelope(
-                "1.0",
-                UUID.randomUUID().toString(),
-                source,
-                type,
-                subject,
-                Instant.now(),
-                "application/json",
-                data
-        );
-        kafka.send(topic, subject, env);
+        publishAll(List.of(new Event(topic, type, subject, source, data)));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishAll(List<Event> events) {
+        if (events.isEmpty()) return;
+        String[] topics = new String[events.size()];
+        String[] keys = new String[events.size()];
+        String[] payloads = new String[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            Event e = events.get(i);
+            CloudEventEnvelope env = new CloudEventEnvelope(
+                    "1.0",
+                    ids.next().toString(),
+                    e.source(),
+                    e.type(),
+                    e.subject(),
+                    Instant.now(),
+                    "application/json",
+                    e.data()
+            );
+            topics[i] = e.topic();
+            keys[i] = e.subject();
+            payloads[i] = serialize(env);
+        }
+        jdbc.query(LOCK_KEYS, ps -> {
+            ps.setInt(1, KEY_LOCK_SPACE);
+            ps.setArray(2, ps.getConnection().createArrayOf("text", keys));
+        }, rs -> {});
+        jdbc.update(INSERT, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("text", topics));
+            ps.setArray(2, ps.getConnection().createArrayOf("text", keys));
+            ps.setArray(3, ps.getConnection().createArrayOf("text", payloads));
+        });
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                relay.wakeUp();
+            }
+        });
     }
+
+    private String serialize(CloudEventEnvelope env) {
+        try {
+            return json.writeValueAsString(env);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("event data is not serializable: " + env.type(), e);
+        }
+    }
+
+    /** An event to publish; the subject doubles as the Kafka key. */
+    public record Event(String topic, String type, String subject, String source, Map<String, Object> data) {}
 }
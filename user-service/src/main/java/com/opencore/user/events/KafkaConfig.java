@@ -1,41 +1,63 @@
 package com.opencore.user.events;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
-import org.springframework.kafka.support.serializer.JsonSerializer;
 
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
 public class KafkaConfig {
+    // Values are the CloudEvent JSON exactly as the outbox stored it.
     @Bean
-    public ProducerFactory<String, CloudEventEnvelope> producerFactory(KafkaProperties props) {
+    public ProducerFactory<String, byte[]> producerFactory(KafkaProperties props) {
         Map<String, Object> cfg = new HashMap<>(props.buildProducerProperties());
         cfg.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        cfg.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
-        cfg.put(JsonSerializer.ADD_TYPE_INFO_HEADERS, false);
+        cfg.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
         return new DefaultKafkaProducerFactory<>(cfg);
     }
 
     @Bean
-    public KafkaTemplate<String, CloudEventEnvelope> kafkaTemplate(ProducerFactory<String, CloudEventEnvelope> pf) {
+    public KafkaTemplate<String, byte[]> kafkaTemplate(ProducerFactory<String, byte[]> pf) {
         return new KafkaTemplate<>(pf);
     }
 
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> membershipListenerFactory(KafkaProperties props) {
+        Map<String, Object> cfg = new HashMap<>(props.buildConsumerProperties());
+        cfg.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        cfg.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        // Every replica reads every change, outside any group and without committing. Its cache starts empty, so only new
+        // changes matter.
+        cfg.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        cfg.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        cfg.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> f = new ConcurrentKafkaListenerContainerFactory<>();
+        f.setConsumerFactory(new DefaultKafkaConsumerFactory<>(cfg));
+        f.setBatchListener(true);
+        return f;
+    }
+
     @Bean
     public NewTopic userCreatedTopic() {
         return TopicBuilder.name(EventTopics.USER_CREATED).partitions(3).replicas(1).build();
     }
 
+    // MembershipCacheInvalidator reads the partitions declared for these two.
     @Bean
     public NewTopic orgCreatedTopic() {
         return TopicBuilder.name(EventTopics.ORG_CREATED).partitions(3).replicas(1).build();
@@ -0,0 +1,72 @@
+package com.opencore.user.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencore.user.core.MembershipCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Drops a user's cached orgs on every replica when an org is created for them or they are added to one. Every replica
+ * reads every partition, so there is no consumer group: partitions are assigned directly and it starts at the latest
+ * offset.
+ */
+@Component
+@ConditionalOnProperty(prefix = "opencore.membership-cache", name = "enabled", havingValue = "true")
+public class MembershipCacheInvalidator {
+    private static final Logger log = LoggerFactory.getLogger(MembershipCacheInvalidator.class);
+
+    private final MembershipCache cache;
+    private final ObjectMapper json;
+    private final Counter received;
+
+    public MembershipCacheInvalidator(MembershipCache cache, ObjectMapper json, MeterRegistry registry) {
+        this.cache = cache;
+        this.json = json;
+        this.received = Counter.builder("opencore.user.membership.cache.invalidations")
+                .description("Membership change events applied to the cache")
+                .register(registry);
+    }
+
+    @KafkaListener(
+            topicPartitions = {
+                    @TopicPartition(topic = EventTopics.ORG_CREATED, partitions = "0-#{@orgCreatedTopic.numPartitions() - 1}"),
+                    @TopicPartition(topic = EventTopics.ORG_MEMBER_ADDED, partitions = "0-#{@orgMemberAddedTopic.numPartitions() - 1}")
+            },
+            containerFactory = "membershipListenerFactory"
+    )
+    public void onChange(List<ConsumerRecord<String, byte[]>> records) {
+        for (ConsumerRecord<String, byte[]> record : records) {
+            UUID userId = userOf(record);
+            if (userId == null) {
+                log.warn("skipping membership event without a user at {}-{}@{}", record.topic(), record.partition(), record.offset());
+                continue;
+            }
+            cache.invalidate(userId);
+            received.increment();
+        }
+    }
+
+    // OrgCreated names the owner, OrgMemberAdded the member.
+    private UUID userOf(ConsumerRecord<String, byte[]> record) {
+        if (record.value() == null) return null;
+        try {
+            JsonNode data = json.readTree(record.value()).path("data");
+            JsonNode user = EventTopics.ORG_CREATED.equals(record.topic()) ? data.path("ownerUserId") : data.path("userId");
+            return user.isTextual() ? UUID.fromString(user.asText()) : null;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.opencore.user.events;
+
+import com.opencore.user.core.OpenCoreOutboxProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the event outbox to Kafka in id order.
+ *
+ * Each round claims up to a batch of the oldest rows, sends them all without waiting in between, waits for the acks
+ * and deletes the acknowledged prefix, all in one transaction. Every replica runs a relay, but a round only proceeds
+ * while holding a transaction-scoped advisory lock, so one replica drains at a time. {@link EventPublisher} makes
+ * transactions that write events for the same key commit in id order, so events for a key leave in the order they
+ * committed. Delivery is at-least-once: a crash between the acks and the commit resends the batch.
+ */
+@Component
+public class OutboxRelay implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final long LOCK_KEY = 0x6f63_6f75_7462_6f78L;
+    private static final long STATS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+    // Comes back empty, like an empty outbox, while another replica holds the lock.
+    private static final String CLAIM = """
+            select id, topic, event_key, payload::text, created_at
+            from user_service.event_outbox, (select pg_try_advisory_xact_lock(?) as locked) lock
+            where lock.locked
+            order by id
+            limit ?
+            """;
+    private static final String DELETE = "delete from user_service.event_outbox where id = any(?)";
+    private static final String STATS = "select count(*), min(created_at) from user_service.event_outbox";
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final KafkaTemplate<String, byte[]> kafka;
+    private final OpenCoreOutboxProperties props;
+    private final Counter published;
+    private final Counter failures;
+    private final Timer delivery;
+    private final Object signal = new Object();
+
+    private volatile boolean running;
+    private boolean woken;
+    private Thread thread;
+    // Backlog and lag are read on scrape, not by the relay, so they keep moving while a round is stuck on the broker.
+    private long statsAt;
+    private long backlog;
+    private double lagSeconds;
+
+    public OutboxRelay(
+            JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager,
+            KafkaTemplate<String, byte[]> kafka,
+            OpenCoreOutboxProperties props,
+            MeterRegistry registry
+    ) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.kafka = kafka;
+        this.props = props;
+        this.published = Counter.builder("opencore.user.outbox.published")
+                .description("Events acknowledged by Kafka and removed from the outbox")
+                .register(registry);
+        this.failures = Counter.builder("opencore.user.outbox.failures")
+                .description("Relay rounds that stopped early on a send or database error")
+                .register(registry);
+        this.delivery = Timer.builder("opencore.user.outbox.delivery")
+                .description("Time from an event's transaction to its broker ack")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        Gauge.builder("opencore.user.outbox.backlog", this, r -> r.stats().backlog)
+                .description("Events waiting in the outbox")
+                .register(registry);
+        Gauge.builder("opencore.user.outbox.lag.seconds", this, r -> r.stats().lagSeconds)
+                .description("Age of the oldest event waiting in the outbox")
+                .register(registry);
+    }
+
+    /** Starts a round now instead of at the next poll. Called after a transaction that wrote events commits. */
+    public void wakeUp() {
+        synchronized (signal) {
+            woken = true;
+            signal.notify();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "user-outbox-relay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        wakeUp();
+        try {
+            thread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        long backoff = 0;
+        while (running) {
+            try {
+                Round round = tx.execute(status -> drain());
+                if (round.failure() != null) throw round.failure();
+                backoff = 0;
+                if (round.sent() < props.batchSize()) await(props.pollIntervalMillis());
+            } catch (Exception e) {
+                if (!running) break;
+                failures.increment();
+                backoff = Math.min(MAX_BACKOFF_MILLIS, Math.max(100, backoff * 2));
+                log.warn("outbox relay round failed, retrying in {} ms: {}", backoff, e.toString());
+                sleep(backoff);
+            }
+        }
+    }
+
+    private Round drain() {
+        List<Pending> batch = jdbc.query(CLAIM, (rs, i) -> new Pending(
+                rs.getLong(1),
+                rs.getString(2),
+                rs.getString(3),
+                rs.getString(4).getBytes(StandardCharsets.UTF_8),
+                rs.getTimestamp(5)
+        ), LOCK_KEY, props.batchSize());
+        if (batch.isEmpty()) return new Round(0, null);
+
+        List<CompletableFuture<SendResult<String, byte[]>>> acks = new ArrayList<>(batch.size());
+        Exception failure = null;
+        try {
+            for (Pending p : batch) acks.add(kafka.send(p.topic(), p.key(), p.payload()));
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        // Every send completes within the producer's delivery.timeout.ms. Only the acknowledged prefix is deleted,
+        // so a failed event is retried ahead of everything after it.
+        int acked = 0;
+        for (CompletableFuture<SendResult<String, byte[]>> ack : acks) {
+            try {
+                ack.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = e;
+                break;
+            } catch (Exception e) {
+                failure = e;
+                break;
+            }
+            acked++;
+        }
+        if (acked > 0) {
+            Long[] ids = new Long[acked];
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < acked; i++) {
+                Pending p = batch.get(i);
+                ids[i] = p.id();
+                delivery.record(Duration.ofMillis(Math.max(0, now - p.createdAt().getTime())));
+            }
+            jdbc.update(DELETE, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)));
+            published.increment(acked);
+        }
+        return new Round(acked, failure);
+    }
+
+    private synchronized OutboxRelay stats() {
+        long now = System.nanoTime();
+        if (statsAt != 0 && now - statsAt < STATS_INTERVAL_NANOS) return this;
+        statsAt = now;
+        try {
+            jdbc.query(STATS, rs -> {
+                backlog = rs.getLong(1);
+                Timestamp oldest = rs.getTimestamp(2);
+                lagSeconds = oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.getTime()) / 1000.0;
+            });
+        } catch (Exception e) {
+            log.debug("outbox stats unavailable: {}", e.toString());
+        }
+        return this;
+    }
+
+    private void await(long millis) {
+        synchronized (signal) {
+            if (!woken && running) {
+                try {
+                    signal.wait(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+            woken = false;
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private record Pending(long id, String topic, String key, byte[] payload, Timestamp createdAt) {}
+
+    private record Round(int sent, Exception failure) {}
+}
@@ -0,0 +1,19 @@
+package com.opencore.user.persistence;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Narrows an org's audit trail. Null fields match everything; the time range is [from, to). {@code metadata} is a
+ * JSON object the row's metadata must contain.
+ */
+public record AuditFilter(
+        UUID orgId,
+        String action,
+        String resourceType,
+        String resourceId,
+        UUID actorUserId,
+        String metadata,
+        Instant from,
+        Instant to
+) {}
@@ -1,11 +1,8 @@
 package com.opencore.user.persistence;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.UUID;
 
 public interface AuditLogRepository extends JpaRepository<AuditLogEntity, UUID> {
-    Page<AuditLogEntity> findAllByOrgId(UUID orgId, Pageable pageable);
 }
@@ -0,0 +1,28 @@
+package com.opencore.user.persistence;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.UUID;
+
+/** One audit_logs row, for writers that insert it alongside the change it records rather than through JPA. */
+public record AuditRow(
+        UUID id,
+        UUID orgId,
+        UUID actorUserId,
+        String action,
+        String resourceType,
+        String resourceId,
+        String ip,
+        String metadataJson,
+        Instant createdAt
+) {
+    /** Oldest first on (created_at, id), the order Postgres gives. */
+    public static final Comparator<AuditRow> ORDER =
+            Comparator.comparing(AuditRow::createdAt).thenComparing(AuditRow::id, AuditRow::compareIds);
+
+    /** Compares uuids the way Postgres does, as unsigned bytes; {@link UUID#compareTo} is signed. */
+    public static int compareIds(UUID a, UUID b) {
+        int c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,66 @@
+package com.opencore.user.persistence;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.UUID;
+
+/** Inserts audit rows in bulk, one statement per call, for the write-behind audit writer. */
+@Repository
+public class AuditRowWriter {
+    // Replays (a spill file written twice, a batch retried after a lost commit ack) skip rows already present.
+    private static final String INSERT = """
+            insert into user_service.audit_logs
+                (id, org_id, actor_user_id, action, resource_type, resource_id, ip, metadata_json, created_at)
+            select id, org_id, actor_user_id, action, resource_type, resource_id, ip,
+                   cast(metadata_json as jsonb), cast(created_at as timestamptz)
+            from unnest(?, ?, ?, ?, ?, ?, ?, ?, ?)
+                as t(id, org_id, actor_user_id, action, resource_type, resource_id, ip, metadata_json, created_at)
+            on conflict do nothing
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    public AuditRowWriter(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public void insert(List<AuditRow> rows) {
+        int n = rows.size();
+        UUID[] ids = new UUID[n];
+        UUID[] orgIds = new UUID[n];
+        UUID[] actorUserIds = new UUID[n];
+        String[] actions = new String[n];
+        String[] resourceTypes = new String[n];
+        String[] resourceIds = new String[n];
+        String[] ips = new String[n];
+        String[] metadata = new String[n];
+        String[] createdAt = new String[n];
+        for (int i = 0; i < n; i++) {
+            AuditRow r = rows.get(i);
+            ids[i] = r.id();
+            orgIds[i] = r.orgId();
+            actorUserIds[i] = r.actorUserId();
+            actions[i] = r.action();
+            resourceTypes[i] = r.resourceType();
+            resourceIds[i] = r.resourceId();
+            ips[i] = r.ip();
+            metadata[i] = r.metadataJson();
+            createdAt[i] = r.createdAt().toString();
+        }
+        jdbc.update(INSERT, ps -> {
+            Connection con = ps.getConnection();
+            ps.setArray(1, con.createArrayOf("uuid", ids));
+            ps.setArray(2, con.createArrayOf("uuid", orgIds));
+            ps.setArray(3, con.createArrayOf("uuid", actorUserIds));
+            ps.setArray(4, con.createArrayOf("text", actions));
+            ps.setArray(5, con.createArrayOf("text", resourceTypes));
+            ps.setArray(6, con.createArrayOf("text", resourceIds));
+            ps.setArray(7, con.createArrayOf("text", ips));
+            ps.setArray(8, con.createArrayOf("text", metadata));
+            ps.setArray(9, con.createArrayOf("text", createdAt));
+        });
+    }
+}
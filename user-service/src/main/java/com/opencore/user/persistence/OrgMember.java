@@ -0,0 +1,7 @@
+package com.opencore.user.persistence;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/** One member of an org, with the user's email. */
+public record OrgMember(UUID userId, String email, String role, Instant createdAt) {}
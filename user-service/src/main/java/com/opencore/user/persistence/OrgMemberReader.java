@@ -0,0 +1,96 @@
+package com.opencore.user.persistence;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Reads an org's members with their emails, oldest first, in keyset pages on (created_at, user_id) or as one stream.
+ *
+ * Both walk idx_members_org_created_at from the cursor, so a page costs the same however deep it is. The role is in
+ * the index too, so a role filter skips non-matching members without visiting the table. No count is ever taken.
+ */
+@Repository
+public class OrgMemberReader {
+    // Same trade-off as the audit export's fetch size.
+    private static final int EXPORT_FETCH_SIZE = 1_000;
+
+    private static final String SELECT = """
+            select m.user_id, u.email, m.role, m.created_at
+            from user_service.org_memberships m
+            join user_service.users u on u.id = m.user_id
+            where m.org_id = :orgId
+            """;
+
+    private static final RowMapper<OrgMember> ROW = (rs, i) -> new OrgMember(
+            rs.getObject("user_id", UUID.class),
+            rs.getString("email"),
+            rs.getString("role"),
+            rs.getObject("created_at", OffsetDateTime.class).toInstant()
+    );
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate exporting;
+
+    public OrgMemberReader(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+        JdbcTemplate cursor = new JdbcTemplate(jdbc.getJdbcTemplate().getDataSource());
+        cursor.setFetchSize(EXPORT_FETCH_SIZE);
+        this.exporting = new NamedParameterJdbcTemplate(cursor);
+    }
+
+    /** Up to {@code limit} members, with the role when given, strictly after (afterCreatedAt, afterUserId) when given. */
+    @Transactional(readOnly = true)
+    public List<OrgMember> page(UUID orgId, String role, Instant afterCreatedAt, UUID afterUserId, int limit) {
+        MapSqlParameterSource p = new MapSqlParameterSource();
+        StringBuilder sql = where(orgId, role, p);
+        if (afterCreatedAt != null) {
+            sql.append("and (m.created_at, m.user_id) > (:afterCreatedAt, :afterUserId)\n");
+            p.addValue("afterCreatedAt", afterCreatedAt.atOffset(ZoneOffset.UTC), Types.TIMESTAMP_WITH_TIMEZONE);
+            p.addValue("afterUserId", afterUserId, Types.OTHER);
+        }
+        sql.append("order by m.created_at, m.user_id\nlimit :limit");
+        p.addValue("limit", limit, Types.INTEGER);
+        return jdbc.query(sql.toString(), p, ROW);
+    }
+
+    /**
+     * Hands every member to {@code sink} in page order as it comes off a server-side cursor, so memory stays at one
+     * fetch. Holds one connection and transaction until the last row; an exception from the sink stops the read.
+     */
+    @Transactional(readOnly = true)
+    public void export(UUID orgId, String role, Consumer<OrgMember> sink) {
+        MapSqlParameterSource p = new MapSqlParameterSource();
+        StringBuilder sql = where(orgId, role, p).append("order by m.created_at, m.user_id");
+        exporting.query(sql.toString(), p, (RowCallbackHandler) rs -> sink.accept(ROW.mapRow(rs, 0)));
+    }
+
+    @Transactional(readOnly = true)
+    public boolean orgExists(UUID orgId) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(
+                "select exists (select 1 from user_service.organizations where id = :orgId)",
+                new MapSqlParameterSource().addValue("orgId", orgId, Types.OTHER), Boolean.class));
+    }
+
+    private static StringBuilder where(UUID orgId, String role, MapSqlParameterSource p) {
+        StringBuilder sql = new StringBuilder(SELECT);
+        p.addValue("orgId", orgId, Types.OTHER);
+        if (role != null) {
+            sql.append("and m.role = :role\n");
+            p.addValue("role", role, Types.VARCHAR);
+        }
+        return sql;
+    }
+}
@@ -1,6 +1,9 @@
 package com.opencore.user.persistence;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -9,7 +12,12 @@ import java.util.UUID;
 public interface OrgMembershipRepository extends JpaRepository<OrgMembershipEntity, OrgMembershipId> {
     Optional<OrgMembershipEntity> findByIdOrgIdAndIdUserId(UUID orgId, UUID userId);
 
-    List<OrgMembershipEntity> findAllByIdOrgId(UUID orgId);
-
-    List<OrgMembershipEntity> findAllByIdUserId(UUID userId);
+    @Query("""
+            select new com.opencore.user.persistence.UserOrg(m.id.orgId, o.name, m.role)
+            from OrgMembershipEntity m join OrganizationEntity o on o.id = m.id.orgId
+            where m.id.userId = :userId
+            order by m.createdAt, m.id.orgId
+            """)
+    @Transactional(readOnly = true)
+    List<UserOrg> findOrgsOfUser(@Param("userId") UUID userId);
 }
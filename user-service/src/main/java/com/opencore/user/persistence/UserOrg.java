@@ -0,0 +1,6 @@
+package com.opencore.user.persistence;
+
+import java.util.UUID;
+
+/** One org a user belongs to, with the org's name and the user's role in it. */
+public record UserOrg(UUID orgId, String orgName, String role) {}
@@ -0,0 +1,277 @@
+package com.opencore.user.persistence;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Write paths for users, organizations and memberships, each a single statement that also inserts its audit row.
+ *
+ * Uniqueness and existence are left to the database (the email index, the membership primary key and its foreign
+ * keys) rather than checked with reads first, which both saves round trips and closes check-then-insert races.
+ * Parameters are bound with explicit SQL types so the driver never has to describe a statement to type a null.
+ * A null {@link AuditRow} skips the audit insert, for when audit rows are written behind.
+ */
+@Repository
+public class UserOrgWriter {
+    public static final String MEMBER_ORG_FK = "org_memberships_org_id_fkey";
+    public static final String MEMBER_USER_FK = "org_memberships_user_id_fkey";
+
+    private static final AuditRow NO_AUDIT = new AuditRow(null, null, null, null, null, null, null, null, null);
+
+    // The trailing select finds an existing user in the same round trip. It reads the statement's snapshot, so it
+    // misses a row committed by a concurrent insert that this one waited on; insertUser re-reads for that case.
+    private static final String INSERT_USER = """
+            with ins as (
+                insert into user_service.users (id, email, created_at)
+                values (:id, :email, :createdAt)
+                on conflict ((lower(email))) do nothing
+                returning id
+            ), audit as (
+            """ + auditInsertFrom("ins") + """
+            )
+            select id, true as created from ins
+            union all
+            select id, false from user_service.users where lower(email) = lower(:email)
+            """;
+
+    private static final String FIND_USER_BY_EMAIL =
+            "select id, false as created from user_service.users where lower(email) = lower(:email)";
+
+    // Bulk form of INSERT_USER: the rows arrive as parallel arrays, so a whole chunk is one statement and one round
+    // trip whatever its size. Each created user gets its own audit row. Rows are inserted in email order so concurrent
+    // imports of overlapping emails take the unique index in the same order instead of deadlocking.
+    private static final String INSERT_USERS = """
+            with input as (
+                select * from unnest(:ids, :emails, :auditIds) as t(id, email, audit_id)
+            ), ins as (
+                insert into user_service.users (id, email, created_at)
+                select id, email, :createdAt from input
+                order by lower(email)
+                on conflict ((lower(email))) do nothing
+                returning id, email
+            ), audit as (
+                insert into user_service.audit_logs
+                    (id, org_id, actor_user_id, action, resource_type, resource_id, ip, metadata_json, created_at)
+                select input.audit_id, cast(:auditOrgId as uuid), cast(:auditActorUserId as uuid), :auditAction,
+                       :auditResourceType, ins.id::text, :auditIp, jsonb_build_object('email', ins.email), :auditCreatedAt
+                from ins join input on input.id = ins.id
+                where :auditAction is not null
+            )
+            select id, email, true as created from ins
+            union all
+            select u.id, u.email, false from user_service.users u join input on lower(u.email) = lower(input.email)
+            """;
+
+    private static final String FIND_USERS_BY_EMAIL =
+            "select id, email, false as created from user_service.users where lower(email) = any(:emails)";
+
+    private static final String INSERT_ORG = """
+            with org as (
+                insert into user_service.organizations (id, name, created_at)
+                values (:orgId, :name, :createdAt)
+                returning id
+            ), member as (
+                insert into user_service.org_memberships (org_id, user_id, role, created_at)
+                select id, cast(:userId as uuid), :role, :createdAt from org
+            )
+            """ + auditInsertFrom("org");
+
+    private static final String UPSERT_MEMBER = """
+            with member as (
+                insert into user_service.org_memberships (org_id, user_id, role, created_at)
+                values (:orgId, :userId, :role, :createdAt)
+                on conflict (org_id, user_id) do update set role = excluded.role
+                returning org_id
+            )
+            """ + auditInsertFrom("member");
+
+    // Bulk form of UPSERT_MEMBER. Users are checked in the same statement, so unknown ones are reported rather than
+    // failing the batch; re-adding a member with the role it already has writes nothing. Rows are upserted in user
+    // id order so concurrent batches over the same members lock them in the same order. The trailing select returns
+    // one row per existing user, inserted null when unchanged, or a single null row when the org doesn't exist.
+    private static final String UPSERT_MEMBERS = """
+            with input as (
+                select * from unnest(:userIds, :roles, :auditIds) as t(user_id, role, audit_id)
+            ), org as (
+                select id from user_service.organizations where id = :orgId
+            ), existing as (
+                select id from user_service.users where id = any(:userIds)
+            ), upsert as (
+                insert into user_service.org_memberships as m (org_id, user_id, role, created_at)
+                select org.id, input.user_id, input.role, :createdAt
+                from input join existing on existing.id = input.user_id cross join org
+                order by input.user_id
+                on conflict (org_id, user_id) do update set role = excluded.role
+                    where m.role is distinct from excluded.role
+                returning m.user_id, (xmax = 0) as inserted
+            ), audit as (
+                insert into user_service.audit_logs
+                    (id, org_id, actor_user_id, action, resource_type, resource_id, ip, metadata_json, created_at)
+                select input.audit_id, cast(:auditOrgId as uuid), cast(:auditActorUserId as uuid), :auditAction,
+                       :auditResourceType, cast(:orgId as text) || ':' || upsert.user_id, :auditIp,
+                       jsonb_build_object('role', input.role), :auditCreatedAt
+                from upsert join input on input.user_id = upsert.user_id
+                where :auditAction is not null
+            )
+            select existing.id, upsert.inserted
+            from existing left join upsert on upsert.user_id = existing.id
+            where exists (select 1 from org)
+            union all
+            select null, null where not exists (select 1 from org)
+            """;
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public UserOrgWriter(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Inserts the user unless one with the same email exists; the audit row is only written for a new user. */
+    public InsertedUser insertUser(UUID id, String email, Instant createdAt, AuditRow audit) {
+        MapSqlParameterSource p = audit(audit)
+                .addValue("id", id, Types.OTHER)
+                .addValue("email", email, Types.VARCHAR)
+                .addValue("createdAt", timestamp(createdAt), Types.TIMESTAMP_WITH_TIMEZONE);
+        RowMapper<InsertedUser> mapper = (rs, i) -> new InsertedUser(rs.getObject(1, UUID.class), email, rs.getBoolean(2));
+        List<InsertedUser> rows = jdbc.query(INSERT_USER, p, mapper);
+        if (rows.isEmpty()) {
+            rows = jdbc.query(FIND_USER_BY_EMAIL, p, mapper);
+        }
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Inserts every user whose email isn't taken yet. Emails must already be normalized and unique within the call.
+     * The audit context supplies everything but each row's id, resource id and metadata, which come from the users.
+     * Returns one row per email.
+     */
+    public List<InsertedUser> insertUsers(UUID[] ids, String[] emails, UUID[] auditIds, Instant createdAt, AuditRow audit) {
+        MapSqlParameterSource p = audit(audit)
+                .addValue("ids", array("uuid", ids))
+                .addValue("emails", array("text", emails))
+                .addValue("auditIds", array("uuid", auditIds))
+                .addValue("createdAt", timestamp(createdAt), Types.TIMESTAMP_WITH_TIMEZONE);
+        RowMapper<InsertedUser> mapper = (rs, i) -> new InsertedUser(rs.getObject(1, UUID.class), rs.getString(2), rs.getBoolean(3));
+        List<InsertedUser> rows = jdbc.query(INSERT_USERS, p, mapper);
+        if (rows.size() < emails.length) {
+            // Same snapshot caveat as insertUser: emails committed concurrently need a second look.
+            Set<String> seen = new HashSet<>();
+            for (InsertedUser row : rows) seen.add(row.email());
+            List<String> missing = new ArrayList<>();
+            for (String email : emails) {
+                if (!seen.contains(email)) missing.add(email);
+            }
+            rows = new ArrayList<>(rows);
+            rows.addAll(jdbc.query(FIND_USERS_BY_EMAIL,
+                    new MapSqlParameterSource("emails", array("text", missing.toArray(new String[0]))), mapper));
+        }
+        return rows;
+    }
+
+    /**
+     * Inserts the organization with its first member. A missing owner surfaces as a
+     * {@link DataIntegrityViolationException} on {@link #MEMBER_USER_FK}.
+     */
+    public void insertOrganization(UUID orgId, String name, UUID ownerUserId, String ownerRole, Instant createdAt, AuditRow audit) {
+        MapSqlParameterSource p = audit(audit)
+                .addValue("orgId", orgId, Types.OTHER)
+                .addValue("name", name, Types.VARCHAR)
+                .addValue("userId", ownerUserId, Types.OTHER)
+                .addValue("role", ownerRole, Types.VARCHAR)
+                .addValue("createdAt", timestamp(createdAt), Types.TIMESTAMP_WITH_TIMEZONE);
+        jdbc.update(INSERT_ORG, p);
+    }
+
+    /** Adds the member, or changes an existing member's role. Missing orgs and users surface as foreign key violations. */
+    public void upsertMember(UUID orgId, UUID userId, String role, Instant createdAt, AuditRow audit) {
+        MapSqlParameterSource p = audit(audit)
+                .addValue("orgId", orgId, Types.OTHER)
+                .addValue("userId", userId, Types.OTHER)
+                .addValue("role", role, Types.VARCHAR)
+                .addValue("createdAt", timestamp(createdAt), Types.TIMESTAMP_WITH_TIMEZONE);
+        jdbc.update(UPSERT_MEMBER, p);
+    }
+
+    /**
+     * Adds or re-roles members in one statement. User ids must be unique within the call. The audit context supplies
+     * everything but each row's id, resource id and metadata. Returns a row per user that exists, or null when the
+     * org doesn't.
+     */
+    public List<UpsertedMember> upsertMembers(UUID orgId, UUID[] userIds, String[] roles, UUID[] auditIds, Instant createdAt, AuditRow audit) {
+        MapSqlParameterSource p = audit(audit)
+                .addValue("orgId", orgId, Types.OTHER)
+                .addValue("userIds", array("uuid", userIds))
+                .addValue("roles", array("text", roles))
+                .addValue("auditIds", array("uuid", auditIds))
+                .addValue("createdAt", timestamp(createdAt), Types.TIMESTAMP_WITH_TIMEZONE);
+        List<UpsertedMember> rows = jdbc.query(UPSERT_MEMBERS, p,
+                (rs, i) -> new UpsertedMember(rs.getObject(1, UUID.class), rs.getObject(2, Boolean.class)));
+        return rows.size() == 1 && rows.get(0).userId() == null ? null : rows;
+    }
+
+    // One audit row per row of source. The filter makes it insert nothing when the caller passed no audit row.
+    private static String auditInsertFrom(String source) {
+        return """
+                insert into user_service.audit_logs
+                    (id, org_id, actor_user_id, action, resource_type, resource_id, ip, metadata_json, created_at)
+                select cast(:auditId as uuid), cast(:auditOrgId as uuid), cast(:auditActorUserId as uuid), :auditAction,
+                       :auditResourceType, :auditResourceId, :auditIp, cast(:auditMetadataJson as jsonb), :auditCreatedAt
+                from %s
+                where :auditAction is not null
+                """.formatted(source);
+    }
+
+    public static boolean violates(DataIntegrityViolationException e, String constraint) {
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null && message.contains("\"" + constraint + "\"");
+    }
+
+    private static MapSqlParameterSource audit(AuditRow a) {
+        if (a == null) a = NO_AUDIT;
+        return new MapSqlParameterSource()
+                .addValue("auditId", a.id(), Types.OTHER)
+                .addValue("auditOrgId", a.orgId(), Types.OTHER)
+                .addValue("auditActorUserId", a.actorUserId(), Types.OTHER)
+                .addValue("auditAction", a.action(), Types.VARCHAR)
+                .addValue("auditResourceType", a.resourceType(), Types.VARCHAR)
+                .addValue("auditResourceId", a.resourceId(), Types.VARCHAR)
+                .addValue("auditIp", a.ip(), Types.VARCHAR)
+                .addValue("auditMetadataJson", a.metadataJson(), Types.VARCHAR)
+                .addValue("auditCreatedAt", timestamp(a.createdAt()), Types.TIMESTAMP_WITH_TIMEZONE);
+    }
+
+    private static SqlTypeValue array(String elementType, Object[] values) {
+        return new AbstractSqlTypeValue() {
+            @Override
+            protected Object createTypeValue(Connection con, int sqlType, String typeName) throws SQLException {
+                return con.createArrayOf(elementType, values);
+            }
+        };
+    }
+
+    private static OffsetDateTime timestamp(Instant instant) {
+        return instant == null ? null : instant.atOffset(ZoneOffset.UTC);
+    }
+
+    public record InsertedUser(UUID id, String email, boolean created) {}
+
+    /** inserted is null when the user was already a member with that role. */
+    public record UpsertedMember(UUID userId, Boolean inserted) {}
+}
@@ -0,0 +1,4 @@
+-- Signups look users up by email and rely on this index to reject duplicates atomically (insert ... on conflict).
+-- Emails are stored lowercased; indexing the expression keeps the rule case-insensitive whatever a writer stores.
+-- Fails if duplicates already exist; merge those first.
+create unique index if not exists users_email_lower_key on user_service.users (lower(email));
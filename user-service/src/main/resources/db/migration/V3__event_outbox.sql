@@ -0,0 +1,9 @@
+-- Events are written here in the same transaction as the change they describe; the outbox relay publishes them to
+-- Kafka in id order and deletes them once acknowledged.
+create table if not exists user_service.event_outbox (
+  id bigint generated always as identity primary key,
+  topic text not null,
+  event_key text not null,
+  payload json not null,
+  created_at timestamptz not null default now()
+);
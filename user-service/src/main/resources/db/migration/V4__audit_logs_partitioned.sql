@@ -0,0 +1,58 @@
+-- audit_logs becomes range-partitioned by month on created_at. The existing table is attached as the partition for
+-- everything before next month instead of being copied, so no rows are rewritten. AuditPartitionMaintainer creates
+-- later months and applies retention.
+--
+-- Run as is, this blocks audit writes while it builds the (id, created_at) key every partition needs and while attaching
+-- scans the table to check its range. On a large table, do both by hand first, with audit_logs still unpartitioned:
+--
+--   create unique index concurrently audit_logs_id_created_at_key on user_service.audit_logs (id, created_at);
+--   alter table user_service.audit_logs add constraint audit_logs_before_partitioning
+--     check (created_at < '<first day of next month, UTC>') not valid;
+--   alter table user_service.audit_logs validate constraint audit_logs_before_partitioning;
+--
+-- The migration then adopts the index as the key and attaches without a scan. The check must not be later than the
+-- boundary the migration computes, the first of the month after now() and the newest row. It is dropped once attached.
+
+alter table user_service.audit_logs rename to audit_logs_legacy;
+alter index user_service.idx_audit_org_created_at rename to audit_logs_legacy_org_created_at_idx;
+do $$
+begin
+  if to_regclass('user_service.audit_logs_id_created_at_key') is null then
+    create unique index audit_logs_id_created_at_key on user_service.audit_logs_legacy (id, created_at);
+  end if;
+end $$;
+alter table user_service.audit_logs_legacy
+  drop constraint audit_logs_pkey,
+  add constraint audit_logs_legacy_pkey primary key using index audit_logs_id_created_at_key;
+
+create table user_service.audit_logs (
+  id uuid not null,
+  org_id uuid,
+  actor_user_id uuid,
+  action text not null,
+  resource_type text,
+  resource_id text,
+  ip text,
+  metadata_json jsonb,
+  created_at timestamptz not null default now(),
+  primary key (id, created_at)
+) partition by range (created_at);
+
+create index idx_audit_org_created_at on user_service.audit_logs (org_id, created_at desc);
+
+-- Month boundaries are computed in UTC, whatever the session time zone.
+do $$
+declare
+  boundary timestamp := date_trunc('month', greatest(now(),
+      coalesce((select max(created_at) from user_service.audit_logs_legacy), now())) at time zone 'UTC') + interval '1 month';
+  m timestamp;
+begin
+  execute format('alter table user_service.audit_logs attach partition user_service.audit_logs_legacy for values from (minvalue) to (%L)',
+      boundary at time zone 'UTC');
+  alter table user_service.audit_logs_legacy drop constraint if exists audit_logs_before_partitioning;
+  for i in 0..2 loop
+    m := boundary + make_interval(months => i);
+    execute format('create table if not exists user_service.%I partition of user_service.audit_logs for values from (%L) to (%L)',
+        'audit_logs_p' || to_char(m, 'YYYYMM'), m at time zone 'UTC', (m + interval '1 month') at time zone 'UTC');
+  end loop;
+end $$;
@@ -0,0 +1,22 @@
+-- Indexes for keyset pages over an org's audit trail, newest first, optionally narrowed by one filter.
+-- Each ends in (created_at desc, id desc) so a page is a single index range starting at the cursor, however deep.
+-- Filters without their own index (resource type, time range) are applied along whichever index is picked;
+-- the time range also prunes partitions.
+--
+-- Building these blocks audit inserts for the duration. On a large table, build the same indexes per partition with
+-- create index concurrently first; creating the parent index then attaches them instead of rebuilding.
+
+create index if not exists idx_audit_org_created_at_id
+    on user_service.audit_logs (org_id, created_at desc, id desc);
+
+create index if not exists idx_audit_org_action_created_at
+    on user_service.audit_logs (org_id, action, created_at desc, id desc);
+
+create index if not exists idx_audit_org_actor_created_at
+    on user_service.audit_logs (org_id, actor_user_id, created_at desc, id desc);
+
+create index if not exists idx_audit_org_resource_created_at
+    on user_service.audit_logs (org_id, resource_id, created_at desc, id desc);
+
+-- Superseded by idx_audit_org_created_at_id.
+drop index if exists user_service.idx_audit_org_created_at;
@@ -0,0 +1,11 @@
+-- Containment search over audit metadata within one org.
+--
+-- The indexed expression nests each row's metadata under its org id, so the jsonb_path_ops hashes cover org, path
+-- and value together: a lookup only touches the org's own matches, however common the value is in other orgs.
+-- ANALYZE keeps statistics on the expression, which is what lets the planner tell a rare value in this org (read the
+-- matches from this index) from a common one (walk idx_audit_org_created_at_id and filter). The index must stay
+-- non-partial for that, hence the coalesce for rows without an org.
+
+create index if not exists idx_audit_org_metadata
+    on user_service.audit_logs
+    using gin (jsonb_set('{}'::jsonb, array[coalesce(org_id::text, '')], metadata_json) jsonb_path_ops);
@@ -0,0 +1,7 @@
+-- Keyset pages over an org's members, oldest first. The role rides along in the index so a role filter is checked
+-- there; only matching members cost a table visit.
+--
+-- Building this blocks membership writes for the duration. On a large table, create it concurrently by hand first.
+
+create index if not exists idx_members_org_created_at
+    on user_service.org_memberships (org_id, created_at, user_id) include (role);